@@ -0,0 +1,137 @@
+package org.javawebstack.command.benchmark;
+
+import org.javawebstack.command.CLI;
+import org.javawebstack.command.CommandContext;
+import org.javawebstack.command.bind.AutoInjector;
+import org.javawebstack.command.bind.annotation.Command;
+import org.javawebstack.command.bind.annotation.param.Arg;
+import org.javawebstack.command.handler.CommandHandler;
+import org.javawebstack.command.router.CommandRoute;
+import org.javawebstack.command.router.CommandValidationException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a controller method invoked through the CommandRouteBinder (method handles) with the previous reflective
+ * binding (Method.invoke with an argument array per call) and a handler calling the same method directly
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinderBenchmark {
+
+    CommandRoute boundRoute;
+    CommandRoute reflectionRoute;
+    CommandRoute directRoute;
+    CommandContext boundContext;
+    CommandContext reflectionContext;
+    CommandContext directContext;
+    Controller controller = new Controller();
+
+    @Setup
+    public void setup() throws CommandValidationException, NoSuchMethodException {
+        CLI bound = new CLI();
+        bound.resolver("int", Integer::parseInt);
+        bound.controller(controller);
+        boundRoute = bound.getRoutes().get(0);
+        boundContext = boundRoute.validate(boundRoute.match(new String[] { "add", "5", "bob" }));
+
+        reflectionRoute = new CommandRoute().segment("add").arg("age", true, Integer::parseInt).arg("name", false)
+                .handler(new ReflectionHandler(bound, controller, Controller.class.getMethod("add", int.class, String.class, CommandContext.class)));
+        reflectionContext = reflectionRoute.validate(reflectionRoute.match(new String[] { "add", "5", "bob" }));
+
+        directRoute = new CommandRoute().segment("add").arg("age", true, Integer::parseInt).arg("name", false)
+                .handler(c -> controller.add(c.arg("age"), c.arg("name"), c));
+        directContext = directRoute.validate(directRoute.match(new String[] { "add", "5", "bob" }));
+    }
+
+    @Benchmark
+    public boolean bound(Blackhole blackhole) throws Exception {
+        controller.blackhole = blackhole;
+        return boundRoute.execute(boundContext);
+    }
+
+    @Benchmark
+    public boolean reflection(Blackhole blackhole) throws Exception {
+        controller.blackhole = blackhole;
+        return reflectionRoute.execute(reflectionContext);
+    }
+
+    @Benchmark
+    public boolean direct(Blackhole blackhole) throws Exception {
+        controller.blackhole = blackhole;
+        return directRoute.execute(directContext);
+    }
+
+    public static class Controller {
+
+        Blackhole blackhole;
+
+        @Command("add <int:age> [name]")
+        public void add(@Arg("age") int age, @Arg("name") String name, CommandContext context) {
+            blackhole.consume(age);
+            blackhole.consume(name);
+        }
+
+    }
+
+    /**
+     * The binding as it was before the method handles, resolves the parameters from their annotations on every call
+     */
+    static class ReflectionHandler implements CommandHandler {
+
+        final CLI cli;
+        final Object controller;
+        final Method method;
+        final Class<?>[] parameterTypes;
+        final Arg[] args;
+
+        ReflectionHandler(CLI cli, Object controller, Method method) {
+            this.cli = cli;
+            this.controller = controller;
+            this.method = method;
+            parameterTypes = method.getParameterTypes();
+            args = new Arg[parameterTypes.length];
+            Annotation[][] annotations = method.getParameterAnnotations();
+            for(int i=0; i<args.length; i++) {
+                for(Annotation annotation : annotations[i]) {
+                    if(annotation instanceof Arg)
+                        args[i] = (Arg) annotation;
+                }
+            }
+        }
+
+        public void handle(CommandContext context) {
+            Map<String, Object> extraArgs = new HashMap<>();
+            Object[] values = new Object[args.length];
+            for(int i=0; i<values.length; i++) {
+                if(args[i] != null) {
+                    values[i] = context.arg(args[i].value());
+                } else {
+                    for(AutoInjector autoInjector : cli.getAutoInjectors()) {
+                        values[i] = autoInjector.getValue(context, extraArgs, parameterTypes[i]);
+                        if(values[i] != null)
+                            break;
+                    }
+                }
+            }
+            try {
+                method.invoke(controller, values);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.javawebstack.command.benchmark;
+
+import org.javawebstack.command.util.SimpleCommandDeclaration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeclarationBenchmark {
+
+    @Param({
+            "ping",
+            "user show <name> [details]",
+            "deploy <target> [files...] --force -v --tag[] {name} --retries {int:count}"
+    })
+    String declaration;
+
+    @Benchmark
+    public SimpleCommandDeclaration parse() {
+        SimpleCommandDeclaration parsed = new SimpleCommandDeclaration();
+        parsed.parse(declaration, false);
+        return parsed;
+    }
+
+}
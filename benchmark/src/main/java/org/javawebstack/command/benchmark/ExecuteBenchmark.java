@@ -0,0 +1,65 @@
+package org.javawebstack.command.benchmark;
+
+import org.javawebstack.command.CLI;
+import org.javawebstack.command.io.DefaultInput;
+import org.javawebstack.command.io.DefaultOutput;
+import org.javawebstack.command.io.Input;
+import org.javawebstack.command.io.Output;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full CLI.execute path from routing to the handler. Run with "-prof gc" and compare gc.alloc.rate.norm,
+ * the bytes allocated per execution.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecuteBenchmark {
+
+    @Param({"10", "1000"})
+    int routes;
+
+    CLI cli;
+    Input input;
+    Output output;
+    String[] plain;
+    String[] withOptions;
+    String[] miss;
+
+    @Setup
+    public void setup() {
+        cli = new CLI();
+        cli.resolver("int", Integer::parseInt);
+        for(int i=0; i<routes; i++)
+            cli.route("group" + (i % 10) + " command" + i + " <name> [int:count] --verbose --tag[] {value}", c -> {});
+        int last = routes - 1;
+        plain = new String[] { "group" + (last % 10), "command" + last, "value" };
+        withOptions = new String[] { "group" + (last % 10), "command" + last, "value", "5", "--verbose", "--tag", "a", "--tag", "b" };
+        miss = new String[] { "group0", "unknown" };
+        input = new DefaultInput(new ByteArrayInputStream(new byte[0]));
+        output = new DefaultOutput(new PrintStream(OutputBenchmark.NULL), new PrintStream(OutputBenchmark.NULL));
+    }
+
+    @Benchmark
+    public boolean plain() {
+        return cli.execute(plain, input, output);
+    }
+
+    @Benchmark
+    public boolean withOptions() {
+        return cli.execute(withOptions, input, output);
+    }
+
+    @Benchmark
+    public boolean notFound() {
+        return cli.execute(miss, input, output);
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.javawebstack.command.benchmark;
+
+import org.javawebstack.command.io.BufferedOutput;
+import org.javawebstack.command.io.DefaultOutput;
+import org.javawebstack.command.io.Output;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutputBenchmark {
+
+    static final OutputStream NULL = new OutputStream() {
+        public void write(int b) {
+        }
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Param({"default", "buffered"})
+    String type;
+
+    Output output;
+    String line = "Deployed 42 files to production in 1234ms";
+    byte[] block = new byte[4096];
+
+    @Setup
+    public void setup() {
+        if(type.equals("buffered"))
+            output = new BufferedOutput(NULL, NULL);
+        else
+            output = new DefaultOutput(new PrintStream(NULL), new PrintStream(NULL));
+    }
+
+    @Benchmark
+    public void print() {
+        output.print(line);
+    }
+
+    @Benchmark
+    public void writeBytes() {
+        output.write(block);
+    }
+
+}
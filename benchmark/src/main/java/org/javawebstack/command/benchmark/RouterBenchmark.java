@@ -0,0 +1,54 @@
+package org.javawebstack.command.benchmark;
+
+import org.javawebstack.command.router.CommandRoute;
+import org.javawebstack.command.router.CommandRouter;
+import org.javawebstack.command.router.CommandRouterResult;
+import org.javawebstack.command.router.CommandValidationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouterBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int routes;
+
+    CommandRouter router;
+    String[] hit;
+    String[] miss;
+
+    @Setup
+    public void setup() {
+        router = new CommandRouter();
+        for(int i=0; i<routes; i++) {
+            router.add(new CommandRoute()
+                    .segment("group" + (i % 10))
+                    .segment("command" + i)
+                    .arg("name", true)
+                    .flagOption("verbose")
+                    .handler(c -> {}));
+        }
+        int last = routes - 1;
+        hit = new String[] { "group" + (last % 10), "command" + last, "value", "--verbose" };
+        miss = new String[] { "group0", "unknown", "value", "--verbose" };
+        // Builds the route table outside of the measurement
+        router.getRoutes();
+    }
+
+    @Benchmark
+    public CommandRouterResult hit() throws CommandValidationException {
+        return router.match(hit);
+    }
+
+    @Benchmark
+    public CommandRouterResult miss() throws CommandValidationException {
+        return router.match(miss);
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.javawebstack.command.benchmark;
+
+import org.javawebstack.command.CommandContext;
+import org.javawebstack.command.router.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidateBenchmark {
+
+    CommandRoute route;
+    CommandRoute primitiveRoute;
+    String[] args;
+    CommandParseResult parsed;
+    CommandParseResult primitiveParsed;
+
+    @Setup
+    public void setup() {
+        route = new CommandRoute().segment("deploy").arg("target", true).varArg("files", true, s -> s);
+        primitiveRoute = new CommandRoute().segment("deploy").arg("target", true).varArg("files", true, (IntResolver) Integer::parseInt);
+        for(int i=0; i<20; i++) {
+            route.option("option" + i, false, "value");
+            primitiveRoute.option("option" + i, false, "value");
+        }
+        route.flagOption("f").flagOption("v").repeatableOption("tag", false, "name");
+        primitiveRoute.flagOption("f").flagOption("v").repeatableOption("tag", false, "name");
+        args = new String[] {
+                "deploy", "production", "1", "2", "3", "4", "5", "6", "7", "8",
+                "--option3", "a", "--option7=b", "--option19", "c", "-fv", "--tag", "x", "--tag", "y"
+        };
+        parsed = route.match(args);
+        primitiveParsed = primitiveRoute.match(args);
+    }
+
+    @Benchmark
+    public CommandParseResult match() {
+        return route.match(args);
+    }
+
+    @Benchmark
+    public CommandContext validate() throws CommandValidationException {
+        return route.validate(parsed);
+    }
+
+    @Benchmark
+    public CommandContext validatePrimitive() throws CommandValidationException {
+        return primitiveRoute.validate(primitiveParsed);
+    }
+
+}
@@ -0,0 +1,213 @@
+package org.javawebstack.command.bind.processor;
+
+import org.javawebstack.command.bind.CommandIndex;
+import org.javawebstack.command.bind.annotation.Command;
+import org.javawebstack.command.bind.annotation.CommandPrefix;
+import org.javawebstack.command.bind.annotation.With;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes a CommandIndex of all non abstract classes that declare or inherit command methods,
+ * so CLI.controller doesn't need to scan the classpath at runtime. The index lists the packages it covers and
+ * incremental compilations merge it with the index of the previous compilation.
+ */
+@SupportedAnnotationTypes({
+        "org.javawebstack.command.bind.annotation.Command",
+        "org.javawebstack.command.bind.annotation.CommandPrefix",
+        "org.javawebstack.command.bind.annotation.With"
+})
+public class CommandIndexProcessor extends AbstractProcessor {
+
+    private final Map<String, String> controllers = new TreeMap<>();
+    private final Set<String> packages = new TreeSet<>();
+    private final Set<String> compiled = new HashSet<>();
+
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if(roundEnv.processingOver()) {
+            // A previous index is also rewritten when no controllers are left, it would list removed ones otherwise
+            if(mergePrevious() || controllers.size() > 0)
+                write();
+            return false;
+        }
+        for(TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            packages.add(processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString());
+            scan(type);
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the controllers of the previous index in the output that haven't been compiled this time, e.g. when an IDE
+     * only recompiles changed files. Controllers that don't exist anymore are dropped.
+     * @return whether there has been a previous index
+     */
+    private boolean mergePrevious() {
+        String previous;
+        try {
+            previous = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", CommandIndex.RESOURCE).getCharContent(true).toString();
+        } catch (IOException | IllegalArgumentException ex) {
+            return false;
+        }
+        String className = null;
+        StringBuilder entry = new StringBuilder();
+        for(String line : previous.split("\n")) {
+            if(line.startsWith("package\t")) {
+                packages.add(line.substring(8));
+                continue;
+            }
+            if(line.startsWith("controller\t")) {
+                keepPrevious(className, entry);
+                className = line.substring(11);
+                entry.setLength(0);
+            }
+            entry.append(line).append('\n');
+        }
+        keepPrevious(className, entry);
+        return true;
+    }
+
+    private void keepPrevious(String className, StringBuilder entry) {
+        if(className == null || compiled.contains(className) || controllers.containsKey(className))
+            return;
+        // Binary names of nested classes contain '$', the canonical name is needed for the lookup
+        if(processingEnv.getElementUtils().getTypeElement(className.replace('$', '.')) == null)
+            return;
+        controllers.put(className, entry.toString());
+    }
+
+    private void scan(TypeElement type) {
+        compiled.add(binaryName(type));
+        if(type.getKind() == ElementKind.CLASS && !type.getModifiers().contains(Modifier.ABSTRACT)) {
+            String entry = describe(type);
+            if(entry != null)
+                controllers.put(binaryName(type), entry);
+        }
+        for(TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements()))
+            scan(nested);
+    }
+
+    private String describe(TypeElement type) {
+        StringBuilder methods = new StringBuilder();
+        for(TypeElement t = type; t != null && !t.getQualifiedName().contentEquals(Object.class.getName()); t = superclass(t)) {
+            for(ExecutableElement method : ElementFilter.methodsIn(t.getEnclosedElements())) {
+                Command command = method.getAnnotation(Command.class);
+                if(command == null)
+                    continue;
+                methods.append("method\t").append(binaryName(t)).append('\t').append(method.getSimpleName());
+                for(VariableElement parameter : method.getParameters())
+                    methods.append('\t').append(CommandIndex.escape(typeName(parameter.asType())));
+                methods.append('\n');
+                methods.append("command\t").append(CommandIndex.escape(command.value())).append('\n');
+                With with = method.getAnnotation(With.class);
+                if(with != null)
+                    appendLines(methods, "with", with.value());
+            }
+        }
+        if(methods.length() == 0)
+            return null;
+        StringBuilder sb = new StringBuilder();
+        sb.append("controller\t").append(binaryName(type)).append('\n');
+        Set<String> supertypes = new LinkedHashSet<>();
+        collectSupertypes(type.asType(), supertypes);
+        supertypes.remove(binaryName(type));
+        appendLines(sb, "supertype", supertypes.toArray(new String[0]));
+        CommandPrefix prefix = type.getAnnotation(CommandPrefix.class);
+        if(prefix != null)
+            appendLines(sb, "prefix", prefix.value());
+        With with = type.getAnnotation(With.class);
+        if(with != null)
+            appendLines(sb, "with", with.value());
+        sb.append(methods);
+        return sb.toString();
+    }
+
+    private static void appendLines(StringBuilder sb, String key, String... values) {
+        for(String value : values)
+            sb.append(key).append('\t').append(CommandIndex.escape(value)).append('\n');
+    }
+
+    private void collectSupertypes(TypeMirror type, Set<String> supertypes) {
+        if(type.getKind() != TypeKind.DECLARED)
+            return;
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        if(!supertypes.add(binaryName(element)))
+            return;
+        for(TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type))
+            collectSupertypes(supertype, supertypes);
+    }
+
+    private static TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if(superclass.getKind() != TypeKind.DECLARED)
+            return null;
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    /**
+     * @return the erased type name in the format expected by Class.forName (or the keyword for primitives)
+     */
+    private String typeName(TypeMirror type) {
+        type = processingEnv.getTypeUtils().erasure(type);
+        if(type.getKind().isPrimitive())
+            return type.getKind().name().toLowerCase(Locale.ROOT);
+        if(type.getKind() == TypeKind.ARRAY)
+            return "[" + descriptor(((ArrayType) type).getComponentType());
+        return binaryName((TypeElement) ((DeclaredType) type).asElement());
+    }
+
+    private String descriptor(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN: return "Z";
+            case BYTE: return "B";
+            case CHAR: return "C";
+            case SHORT: return "S";
+            case INT: return "I";
+            case LONG: return "J";
+            case FLOAT: return "F";
+            case DOUBLE: return "D";
+            case ARRAY: return "[" + descriptor(((ArrayType) type).getComponentType());
+            default: return "L" + typeName(type) + ";";
+        }
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void write() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", CommandIndex.RESOURCE);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for(String p : packages)
+                    writer.write("package\t" + CommandIndex.escape(p) + "\n");
+                for(String entry : controllers.values())
+                    writer.write(entry);
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write the command index: " + ex.getMessage());
+        }
+    }
+
+}
@@ -1,34 +1,52 @@
 package org.javawebstack.command;
 
 import org.javawebstack.command.bind.AutoInjector;
+import org.javawebstack.command.bind.CommandIndex;
 import org.javawebstack.command.bind.CommandRouteBinder;
 import org.javawebstack.command.bind.DefaultRouteAutoInjector;
+import org.javawebstack.command.bind.RouteSnapshot;
 import org.javawebstack.command.handler.*;
 import org.javawebstack.command.io.DefaultInput;
 import org.javawebstack.command.io.DefaultOutput;
 import org.javawebstack.command.io.Input;
 import org.javawebstack.command.io.Output;
+import org.javawebstack.command.metrics.CommandMetrics;
+import org.javawebstack.command.metrics.RouteMetrics;
 import org.javawebstack.command.router.CommandRoute;
 import org.javawebstack.command.router.CommandRouter;
 import org.javawebstack.command.router.CommandRouterResult;
 import org.javawebstack.command.router.CommandValidationException;
+import org.javawebstack.command.util.CachingResolver;
+import org.javawebstack.command.util.NativeImageConfig;
 import org.javawebstack.command.util.SimpleCommandDeclaration;
 import org.reflections.Reflections;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class CLI {
 
     private final CommandRouter router = new CommandRouter();
-    private final Map<String, CommandHandler> beforeMiddleware = new HashMap<>();
-    private final Map<String, CommandHandler> afterMiddleware = new HashMap<>();
-
-    private final List<AutoInjector> autoInjectors = new ArrayList<>();
-    private final Map<String, Function<String, Object>> resolvers = new HashMap<>();
-    private ExceptionHandler exceptionHandler = new DefaultExceptionHandler();
-    private CommandNotFoundHandler notFoundHandler = new DefaultCommandNotFoundHandler();
-    private Function<Class<?>, Object> controllerInitiator = CLI::defaultControllerInitiator;
+    private final Map<String, CommandHandler> beforeMiddleware = new ConcurrentHashMap<>();
+    private final Map<String, CommandHandler> afterMiddleware = new ConcurrentHashMap<>();
+
+    private final List<AutoInjector> autoInjectors = new CopyOnWriteArrayList<>();
+    private final Map<String, Function<String, Object>> resolvers = new ConcurrentHashMap<>();
+    private volatile ExceptionHandler exceptionHandler = new DefaultExceptionHandler();
+    private volatile CommandNotFoundHandler notFoundHandler = new DefaultCommandNotFoundHandler();
+    private volatile Function<Class<?>, Object> controllerInitiator = CLI::defaultControllerInitiator;
+    private volatile Executor asyncExecutor = ForkJoinPool.commonPool();
+    private volatile boolean lazyControllers;
+    private volatile CommandMetrics metrics;
+    private volatile String completionCommand;
+    private volatile String imageConfigCommand;
     private final CommandRouteBinder routeBinder = new CommandRouteBinder(this);
 
     public CLI() {
@@ -40,6 +58,115 @@ public class CLI {
         return this;
     }
 
+    public CLI removeRoute(CommandRoute route) {
+        if(router.remove(route)) {
+            CommandMetrics metrics = this.metrics;
+            if(metrics != null)
+                metrics.remove(route);
+        }
+        return this;
+    }
+
+    public CLI removeRoutes(Predicate<CommandRoute> filter) {
+        List<CommandRoute> removed = new ArrayList<>();
+        router.removeIf(route -> {
+            if(!filter.test(route))
+                return false;
+            removed.add(route);
+            return true;
+        });
+        CommandMetrics metrics = this.metrics;
+        if(metrics != null) {
+            for(CommandRoute route : removed)
+                metrics.remove(route);
+        }
+        return this;
+    }
+
+    public List<CommandRoute> getRoutes() {
+        return router.getRoutes();
+    }
+
+    /**
+     * @param words the words of the command line without the program name
+     * @param index index of the word that is completed, it may be equal to the number of words to complete a new word
+     * @return the sorted completion candidates for the word
+     */
+    public List<String> complete(String[] words, int index) {
+        return router.complete(words, index);
+    }
+
+    /**
+     * Enables the entry point that is called by the generated completion scripts, see CompletionScripts.
+     * Executing "&lt;command&gt; &lt;index&gt; [words...]" prints the completion candidates one per line instead of running a route.
+     * @param command name of the entry point, e.g. "__complete", null disables it
+     */
+    public CLI completionCommand(String command) {
+        this.completionCommand = command;
+        return this;
+    }
+
+    public String getCompletionCommand() {
+        return completionCommand;
+    }
+
+    /**
+     * Enables a one-shot entry point for builds: executing "&lt;command&gt; &lt;directory&gt;" writes the native-image
+     * configuration and the AppCDS class list for all bound controllers and routes into the directory, see NativeImageConfig
+     * @param command name of the entry point, e.g. "__image-config", null disables it
+     */
+    public CLI imageConfigCommand(String command) {
+        this.imageConfigCommand = command;
+        return this;
+    }
+
+    public String getImageConfigCommand() {
+        return imageConfigCommand;
+    }
+
+    /**
+     * @return all controllers that have been bound, in the format of the CommandIndex
+     */
+    public List<CommandIndex.Controller> getBoundControllers() {
+        return routeBinder.getBoundControllers();
+    }
+
+    private boolean writeImageConfig(String[] args, Output output) {
+        if(args.length != 2) {
+            output.error("Usage: " + args[0] + " <directory>");
+            return false;
+        }
+        try {
+            new NativeImageConfig(this).write(Paths.get(args[1]));
+        } catch (IOException ex) {
+            output.error("Failed to write the image configuration: " + ex.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean printCompletions(String[] args, Output output) {
+        int index;
+        try {
+            index = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        String[] words = Arrays.copyOfRange(args, Math.min(2, args.length), args.length);
+        if(output != null) {
+            for(String candidate : complete(words, Math.max(0, index)))
+                output.print(candidate);
+        }
+        return true;
+    }
+
+    /**
+     * @return the segment paths of up to limit routes that are the closest to the given command line
+     */
+    public List<String> suggest(String[] args, int limit) {
+        return router.suggest(args, limit);
+    }
+
     public CLI route(String declaration, CommandHandler handler, String... middlewares) {
         SimpleCommandDeclaration decl = new SimpleCommandDeclaration();
         decl.parse(declaration, false);
@@ -68,8 +195,39 @@ public class CLI {
         return controller("", parentClass, p);
     }
 
+    /**
+     * Binds all controllers extending parentClass in the package p. If there is an index generated by the
+     * CommandIndexProcessor that covers the package and contains controllers for it, it's used to find the controllers.
+     * Otherwise the classpath is scanned.
+     */
     public CLI controller(String globalPrefix, Class<?> parentClass, Package p) {
+        ClassLoader classLoader = parentClass.getClassLoader() != null ? parentClass.getClassLoader() : Thread.currentThread().getContextClassLoader();
+        CommandIndex index = CommandIndex.load(classLoader);
+        List<CommandIndex.Controller> indexedControllers = index != null && index.covers(p) ? index.getControllers(parentClass, p) : Collections.emptyList();
+        if(!indexedControllers.isEmpty()) {
+            for(CommandIndex.Controller indexed : indexedControllers) {
+                if(lazyControllers) {
+                    routeBinder.bindLazy(globalPrefix, indexed, classLoader, controllerInitiator);
+                    continue;
+                }
+                Class<?> type;
+                try {
+                    type = Class.forName(indexed.getClassName(), true, classLoader);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException("The command index is outdated, can not find controller " + indexed.getClassName(), e);
+                }
+                routeBinder.bind(globalPrefix, controllerInitiator.apply(type), indexed);
+            }
+            return this;
+        }
         Reflections reflections = new Reflections(p.getName());
+        if(lazyControllers) {
+            reflections.getSubTypesOf(parentClass)
+                    .stream()
+                    .filter(type -> !type.isInterface() && !Modifier.isAbstract(type.getModifiers()))
+                    .forEach(type -> lazyController(globalPrefix, type));
+            return this;
+        }
         reflections.getSubTypesOf(parentClass)
                 .stream()
                 .map(controllerInitiator)
@@ -77,6 +235,60 @@ public class CLI {
         return this;
     }
 
+    /**
+     * Writes the routes of all bound controllers to a snapshot file that can be restored with loadRouteSnapshot on the
+     * next start, see RouteSnapshot. Routes with other handlers are not included.
+     */
+    public CLI writeRouteSnapshot(Path file) {
+        try {
+            routeBinder.snapshot().write(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return this;
+    }
+
+    /**
+     * Registers the routes from a snapshot written by writeRouteSnapshot. The resolvers and middlewares used by the
+     * routes need to be registered before, the controllers are created lazily using the controller initiator.
+     * @return false if there is no snapshot or it's outdated because the classpath has changed, the controllers have to be bound then
+     */
+    public boolean loadRouteSnapshot(Path file) {
+        RouteSnapshot snapshot;
+        try {
+            snapshot = RouteSnapshot.read(file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if(snapshot == null)
+            return false;
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader() != null ? Thread.currentThread().getContextClassLoader() : CLI.class.getClassLoader();
+        routeBinder.restore(snapshot, classLoader, controllerInitiator);
+        return true;
+    }
+
+    public CLI lazyController(Class<?> type) {
+        return lazyController("", type);
+    }
+
+    /**
+     * Registers the routes of the controller class, the controller itself is created using the controller initiator
+     * the first time one of its routes is executed
+     */
+    public CLI lazyController(String globalPrefix, Class<?> type) {
+        Function<Class<?>, Object> initiator = controllerInitiator;
+        routeBinder.bindLazy(globalPrefix, type, () -> initiator.apply(type));
+        return this;
+    }
+
+    /**
+     * If enabled, controllers found by controller(parentClass, package) are only created when one of their routes is executed
+     */
+    public CLI lazyControllers(boolean lazyControllers) {
+        this.lazyControllers = lazyControllers;
+        return this;
+    }
+
     public CLI controller(Object controller) {
         return controller("", controller);
     }
@@ -87,40 +299,216 @@ public class CLI {
     }
 
     public boolean execute(String[] args) {
-        return execute(args, new DefaultInput(), new DefaultOutput());
+        return execute(args, DefaultInput.stdin(), new DefaultOutput());
     }
 
     public boolean execute(String[] args, Input input, Output output) {
+        return dispatch(args, input, output).isSuccess();
+    }
+
+    public CommandSession session(Input input, Output output) {
+        return new CommandSession(this, input, output);
+    }
+
+    CommandResult dispatch(String[] args, Input input, Output output) {
+        return dispatch(args, input, output, null);
+    }
+
+    CommandResult dispatch(String[] args, Input input, Output output, CommandSession session) {
+        return dispatch(args, input, output, session, false);
+    }
+
+    /**
+     * @param contain whether runtime exceptions are written to the output and reported as a failed result instead of
+     *                being thrown, the result tells whether a route has matched before
+     */
+    CommandResult dispatch(String[] args, Input input, Output output, CommandSession session, boolean contain) {
+        long start = System.nanoTime();
+        CommandMetrics metrics = this.metrics;
+        boolean matched = false;
         try {
-            CommandRouterResult result = router.match(args);
+            String completionCommand = this.completionCommand;
+            if(completionCommand != null && args.length > 0 && args[0].equals(completionCommand))
+                return new CommandResult(args, true, printCompletions(args, output), System.nanoTime() - start, output);
+            String imageConfigCommand = this.imageConfigCommand;
+            if(imageConfigCommand != null && args.length > 0 && args[0].equals(imageConfigCommand))
+                return new CommandResult(args, true, writeImageConfig(args, output), System.nanoTime() - start, output);
+            CommandRouterResult result = router.match(args, metrics != null);
             if(!result.isMatched()) {
+                if(metrics != null)
+                    metrics.recordNotFound(result.getRoutingNanos());
                 notFoundHandler.handleNotFound(this, args, input, output);
-                return false;
+                return new CommandResult(args, false, false, System.nanoTime() - start, output);
             }
+            matched = true;
             CommandContext context = result.getContext();
             context.setInput(input);
             context.setOutput(output);
+            context.setSession(session);
             CommandRoute route = result.getRoute();
+            RouteMetrics routeMetrics = null;
+            if(metrics != null) {
+                routeMetrics = metrics.route(route);
+                routeMetrics.recordMatch(result.getRoutingNanos(), result.getValidationNanos());
+            }
+            boolean success;
             try {
-                return route.execute(context);
+                success = route.execute(context, routeMetrics);
             } catch (Exception ex) {
-                try {
-                    exceptionHandler.handleException(context, ex);
-                } catch (Exception hex) {
-                    if(output != null) {
-                        output.error("Exception in ExceptionHandler");
-                        output.error(hex);
-                    }
-                }
-                return false;
+                if(routeMetrics != null)
+                    routeMetrics.recordException();
+                handleException(context, ex);
+                success = false;
             }
+            long duration = System.nanoTime() - start;
+            if(routeMetrics != null)
+                routeMetrics.recordCompletion(success, duration);
+            return new CommandResult(args, true, success, duration, output);
         } catch (CommandValidationException e) {
+            if(metrics != null && e.getRoute() != null)
+                metrics.route(e.getRoute()).recordValidationFailure(e.getRoutingNanos(), e.getValidationNanos());
             if(output != null)
                 output.error(e.getMessage());
+            return new CommandResult(args, true, false, System.nanoTime() - start, output);
+        } catch (RuntimeException ex) {
+            if(!contain)
+                throw ex;
+            if(output != null)
+                output.error(ex);
+            return new CommandResult(args, matched, false, System.nanoTime() - start, output);
+        } finally {
+            if(output != null)
+                output.flush();
+        }
+    }
+
+    public CompletableFuture<Boolean> executeAsync(String[] args) {
+        return executeAsync(args, DefaultInput.stdin(), new DefaultOutput());
+    }
+
+    /**
+     * Matches and executes the command on the async executor, see asyncExecutor.
+     * The future completes with the same result execute would have returned.
+     */
+    public CompletableFuture<Boolean> executeAsync(String[] args, Input input, Output output) {
+        Executor executor = asyncExecutor;
+        CommandMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return router.match(args, metrics != null);
+            } catch (CommandValidationException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor).thenCompose(result -> {
+            if(!result.isMatched()) {
+                if(metrics != null)
+                    metrics.recordNotFound(result.getRoutingNanos());
+                notFoundHandler.handleNotFound(this, args, input, output);
+                return CompletableFuture.completedFuture(false);
+            }
+            CommandContext context = result.getContext();
+            context.setInput(input);
+            context.setOutput(output);
+            // Phases aren't timed here as the handlers don't run in one piece
+            RouteMetrics routeMetrics = metrics != null ? metrics.route(result.getRoute()) : null;
+            if(routeMetrics != null)
+                routeMetrics.recordMatch(result.getRoutingNanos(), result.getValidationNanos());
+            return result.getRoute().executeAsync(context, executor).handle((success, t) -> {
+                if(t == null) {
+                    if(routeMetrics != null)
+                        routeMetrics.recordCompletion(success, System.nanoTime() - start);
+                    return success;
+                }
+                Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                if(!(cause instanceof Exception))
+                    throw new CompletionException(cause);
+                if(routeMetrics != null) {
+                    routeMetrics.recordException();
+                    routeMetrics.recordCompletion(false, System.nanoTime() - start);
+                }
+                handleException(context, (Exception) cause);
+                return false;
+            });
+        }).exceptionally(t -> {
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if(!(cause instanceof CommandValidationException))
+                throw t instanceof CompletionException ? (CompletionException) t : new CompletionException(t);
+            CommandValidationException ex = (CommandValidationException) cause;
+            if(metrics != null && ex.getRoute() != null)
+                metrics.route(ex.getRoute()).recordValidationFailure(ex.getRoutingNanos(), ex.getValidationNanos());
+            if(output != null)
+                output.error(cause.getMessage());
             return false;
+        }).whenComplete((success, t) -> {
+            if(output != null)
+                output.flush();
+        });
+    }
+
+    private void handleException(CommandContext context, Exception ex) {
+        try {
+            exceptionHandler.handleException(context, ex);
+        } catch (Exception hex) {
+            Output output = context.getOutput();
+            if(output != null) {
+                output.error("Exception in ExceptionHandler");
+                output.error(hex);
+            }
         }
     }
 
+    /**
+     * Sets the executor that is used by executeAsync for matching and synchronous handlers.
+     * On newer JDKs a virtual thread per task executor can be used, the default is the common fork join pool.
+     */
+    public CLI asyncExecutor(Executor executor) {
+        this.asyncExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Resolves all args, varargs and option parameters of a matched command at once instead of one after another.
+     * Use the common fork join pool for CPU-bound resolvers over large varargs and a larger pool (or virtual threads)
+     * for slow resolvers, AsyncResolvers don't block any of its threads.
+     * @param executor executor for synchronous resolvers, null to validate sequentially again
+     * @param timeout deadline for the resolution of all values of a command, exceeding it fails the validation
+     */
+    public CLI parallelValidation(Executor executor, long timeout, TimeUnit unit) {
+        router.parallelValidation(executor, timeout, unit);
+        return this;
+    }
+
+    /**
+     * Enables or disables the collection of execution metrics. Disabling drops the collected metrics.
+     */
+    public CLI metrics(boolean enabled) {
+        if(!enabled)
+            this.metrics = null;
+        else if(this.metrics == null)
+            this.metrics = new CommandMetrics();
+        return this;
+    }
+
+    /**
+     * Collects the execution metrics into the given registry, e.g. to share it between multiple CLIs. Null disables them.
+     */
+    public CLI metrics(CommandMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @return the metrics registry or null if metrics are disabled
+     */
+    public CommandMetrics getMetrics() {
+        return metrics;
+    }
+
+    public CommandBatch batch() {
+        return new CommandBatch(this);
+    }
+
     public CLI notFound(CommandNotFoundHandler notFoundHandler) {
         this.notFoundHandler = notFoundHandler;
         return this;
@@ -163,6 +551,36 @@ public class CLI {
         return this;
     }
 
+    /**
+     * Registers a resolver whose results are cached, see CachingResolver.
+     * The cache is used by all segments, arguments and option parameters declared with this resolver name afterwards.
+     */
+    public CLI resolver(String name, Function<String, Object> resolver, int cacheSize, long ttl, TimeUnit unit) {
+        return resolver(name, new CachingResolver(resolver, cacheSize, ttl, unit));
+    }
+
+    /**
+     * @return the cache of the resolver or null if the resolver isn't cached
+     */
+    public CachingResolver getResolverCache(String name) {
+        Function<String, Object> resolver = resolvers.get(name);
+        return resolver instanceof CachingResolver ? (CachingResolver) resolver : null;
+    }
+
+    public CLI invalidateResolverCache(String name) {
+        CachingResolver cache = getResolverCache(name);
+        if(cache != null)
+            cache.invalidateAll();
+        return this;
+    }
+
+    public CLI invalidateResolverCache(String name, String key) {
+        CachingResolver cache = getResolverCache(name);
+        if(cache != null)
+            cache.invalidate(key);
+        return this;
+    }
+
     public Map<String, Function<String, Object>> getResolvers() {
         return resolvers;
     }
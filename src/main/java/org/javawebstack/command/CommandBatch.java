@@ -0,0 +1,111 @@
+package org.javawebstack.command;
+
+import org.javawebstack.command.io.DefaultInput;
+import org.javawebstack.command.io.Input;
+import org.javawebstack.command.io.Output;
+import org.javawebstack.command.io.RecordingOutput;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Executes many command lines in parallel. Every command writes into its own RecordingOutput,
+ * the results are returned in input order and if a shared output is set, the recorded outputs are
+ * replayed to it in input order as well.
+ */
+public class CommandBatch {
+
+    private final CLI cli;
+    private ExecutorService executor;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private Input input = DefaultInput.stdin();
+    private Output sharedOutput;
+
+    public CommandBatch(CLI cli) {
+        this.cli = cli;
+    }
+
+    public CommandBatch executor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public CommandBatch parallelism(int parallelism) {
+        if(parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public CommandBatch input(Input input) {
+        this.input = input;
+        return this;
+    }
+
+    public CommandBatch sharedOutput(Output output) {
+        this.sharedOutput = output;
+        return this;
+    }
+
+    public List<CommandResult> execute(List<String[]> commands) {
+        return execute(commands.iterator());
+    }
+
+    public List<CommandResult> execute(Stream<String[]> commands) {
+        return execute(commands.iterator());
+    }
+
+    public List<CommandResult> execute(Iterator<String[]> commands) {
+        ExecutorService executor = this.executor != null ? this.executor : Executors.newFixedThreadPool(parallelism);
+        try {
+            List<CommandResult> results = new ArrayList<>();
+            Deque<Future<CommandResult>> pending = new ArrayDeque<>();
+            // Only keep a window of commands in flight, so huge streams don't get buffered completely
+            int window = parallelism * 4;
+            while (commands.hasNext() || !pending.isEmpty()) {
+                while (commands.hasNext() && pending.size() < window) {
+                    String[] args = commands.next();
+                    pending.add(executor.submit(() -> executeSingle(args)));
+                }
+                CommandResult result;
+                try {
+                    result = await(pending.poll());
+                } catch (RuntimeException ex) {
+                    // The results of the remaining commands can't be returned anymore
+                    for(Future<CommandResult> future : pending)
+                        future.cancel(true);
+                    throw ex;
+                }
+                if(sharedOutput != null) {
+                    ((RecordingOutput) result.getOutput()).replay(sharedOutput);
+                    result.setOutput(null);
+                }
+                results.add(result);
+            }
+            return results;
+        } finally {
+            // Buffered outputs would hold back the end of the batch otherwise
+            if(sharedOutput != null)
+                sharedOutput.flush();
+            if(this.executor == null)
+                executor.shutdown();
+        }
+    }
+
+    private CommandResult executeSingle(String[] args) {
+        return cli.dispatch(args, input, new RecordingOutput(), null, true);
+    }
+
+    private static CommandResult await(Future<CommandResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+}
@@ -4,37 +4,186 @@ import org.javawebstack.command.handler.CommandExitException;
 import org.javawebstack.command.io.Input;
 import org.javawebstack.command.io.Output;
 import org.javawebstack.command.router.OptionValues;
+import org.javawebstack.command.router.PrimitiveValues;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.lang.reflect.Array;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 public class CommandContext {
 
     private final Map<String, Object> arguments;
+    private final PrimitiveValues primitiveArguments;
     private final Map<String, Object> parameters;
     private final Map<String, List<OptionValues>> options;
     private final Map<String, Object> attributes = new HashMap<>();
     private Input input;
     private Output output;
+    private CommandSession session;
 
     public CommandContext(Map<String, Object> arguments, Map<String, Object> parameters, Map<String, List<OptionValues>> options) {
+        this(arguments, null, parameters, options);
+    }
+
+    public CommandContext(Map<String, Object> arguments, PrimitiveValues primitiveArguments, Map<String, Object> parameters, Map<String, List<OptionValues>> options) {
         this.arguments = arguments;
+        this.primitiveArguments = primitiveArguments;
         this.parameters = parameters;
         this.options = options;
     }
 
     public <T> T arg(String name) {
+        if(primitiveArguments != null && primitiveArguments.has(name))
+            return (T) primitiveArguments.get(name);
         if(!arguments.containsKey(name))
             throw new IllegalArgumentException("Unknown argument '" + name + "'");
         return (T) arguments.get(name);
     }
 
+    public int argInt(String name) {
+        if(primitiveArguments != null && primitiveArguments.has(name))
+            return primitiveArguments.getInt(name);
+        return Math.toIntExact(integerArg(name));
+    }
+
+    public long argLong(String name) {
+        if(primitiveArguments != null && primitiveArguments.has(name))
+            return primitiveArguments.getLong(name);
+        return integerArg(name);
+    }
+
+    public double argDouble(String name) {
+        if(primitiveArguments != null && primitiveArguments.has(name))
+            return primitiveArguments.getDouble(name);
+        return numberArg(name).doubleValue();
+    }
+
+    public boolean argBoolean(String name) {
+        if(primitiveArguments != null && primitiveArguments.has(name))
+            return primitiveArguments.getBoolean(name);
+        Object v = arg(name);
+        if(!(v instanceof Boolean))
+            throw new IllegalArgumentException("The argument '" + name + "' is not a boolean");
+        return (Boolean) v;
+    }
+
+    private Number numberArg(String name) {
+        Object v = arg(name);
+        if(!(v instanceof Number))
+            throw new IllegalArgumentException("The argument '" + name + "' is not a number");
+        return (Number) v;
+    }
+
+    /**
+     * Unboxes like PrimitiveValues, decimals are rejected instead of being truncated
+     */
+    private long integerArg(String name) {
+        Number n = numberArg(name);
+        if(!isInteger(n))
+            throw new IllegalArgumentException("The argument '" + name + "' is not an integer");
+        return n instanceof BigInteger ? ((BigInteger) n).longValueExact() : n.longValue();
+    }
+
+    /**
+     * @return the values of the vararg, values of primitive resolvers are boxed
+     */
     public <T> List<T> varArg(String name) {
         Object v = arg(name);
+        if(v instanceof List)
+            return (List<T>) v;
+        if(v == null || !v.getClass().isArray())
+            throw new IllegalArgumentException("Invalid vararg '" + name + "'");
+        List<Object> boxed = new ArrayList<>(Array.getLength(v));
+        for(int i=0; i<Array.getLength(v); i++)
+            boxed.add(Array.get(v, i));
+        return (List<T>) boxed;
+    }
+
+    /**
+     * Streams the values of the vararg, the values of streaming varargs are resolved while the stream is consumed
+     */
+    public <T> Stream<T> varArgStream(String name) {
+        return this.<T>varArg(name).stream();
+    }
+
+    public int[] varArgInts(String name) {
+        Object v = arg(name);
+        if(v instanceof int[])
+            return (int[]) v;
+        List<?> values = primitiveVarArg(name, v);
+        int[] result = new int[values.size()];
+        for(int i=0; i<result.length; i++)
+            result[i] = Math.toIntExact(integer(name, values.get(i)));
+        return result;
+    }
+
+    public long[] varArgLongs(String name) {
+        Object v = arg(name);
+        if(v instanceof long[])
+            return (long[]) v;
+        if(v instanceof int[])
+            return Arrays.stream((int[]) v).asLongStream().toArray();
+        List<?> values = primitiveVarArg(name, v);
+        long[] result = new long[values.size()];
+        for(int i=0; i<result.length; i++)
+            result[i] = integer(name, values.get(i));
+        return result;
+    }
+
+    public double[] varArgDoubles(String name) {
+        Object v = arg(name);
+        if(v instanceof double[])
+            return (double[]) v;
+        if(v instanceof int[])
+            return Arrays.stream((int[]) v).asDoubleStream().toArray();
+        if(v instanceof long[])
+            return Arrays.stream((long[]) v).asDoubleStream().toArray();
+        List<?> values = primitiveVarArg(name, v);
+        double[] result = new double[values.size()];
+        for(int i=0; i<result.length; i++)
+            result[i] = number(name, values.get(i)).doubleValue();
+        return result;
+    }
+
+    public boolean[] varArgBooleans(String name) {
+        Object v = arg(name);
+        if(v instanceof boolean[])
+            return (boolean[]) v;
+        List<?> values = primitiveVarArg(name, v);
+        boolean[] result = new boolean[values.size()];
+        for(int i=0; i<result.length; i++) {
+            if(!(values.get(i) instanceof Boolean))
+                throw new IllegalArgumentException("The vararg '" + name + "' contains values that are not booleans");
+            result[i] = (Boolean) values.get(i);
+        }
+        return result;
+    }
+
+    private static List<?> primitiveVarArg(String name, Object v) {
         if(!(v instanceof List))
             throw new IllegalArgumentException("Invalid vararg '" + name + "'");
-        return (List<T>) v;
+        return (List<?>) v;
+    }
+
+    private static Number number(String name, Object o) {
+        if(!(o instanceof Number))
+            throw new IllegalArgumentException("The vararg '" + name + "' contains values that are not numbers");
+        return (Number) o;
+    }
+
+    private static long integer(String name, Object o) {
+        Number n = number(name, o);
+        if(!isInteger(n))
+            throw new IllegalArgumentException("The vararg '" + name + "' contains values that are not integers");
+        return n instanceof BigInteger ? ((BigInteger) n).longValueExact() : n.longValue();
+    }
+
+    private static boolean isInteger(Number n) {
+        return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte || n instanceof BigInteger || n instanceof AtomicInteger || n instanceof AtomicLong;
     }
 
     public <T> T param(String name) {
@@ -76,7 +225,10 @@ public class CommandContext {
     }
 
     public <T> T attrib(String key) {
-        return (T) attributes.get(key);
+        Object value = attributes.get(key);
+        if(value == null && session != null)
+            return session.attrib(key);
+        return (T) value;
     }
 
     public void done() {
@@ -110,6 +262,18 @@ public class CommandContext {
         throw new CommandExitException(false);
     }
 
+    /**
+     * Writes the message and waits at most the given time for the user to answer
+     * @return the answer or null if the timeout elapsed or the input has ended
+     */
+    public String prompt(String message, long timeout, TimeUnit unit) {
+        if(output != null) {
+            output.write(message);
+            output.flush();
+        }
+        return input.readLine(timeout, unit);
+    }
+
     public Input getInput() {
         return input;
     }
@@ -118,6 +282,13 @@ public class CommandContext {
         return output;
     }
 
+    /**
+     * @return the session the command is executed in or null if it's not executed in a session
+     */
+    public CommandSession getSession() {
+        return session;
+    }
+
     public void setInput(Input input) {
         this.input = input;
     }
@@ -126,4 +297,8 @@ public class CommandContext {
         this.output = output;
     }
 
+    public void setSession(CommandSession session) {
+        this.session = session;
+    }
+
 }
@@ -0,0 +1,315 @@
+package org.javawebstack.command;
+
+import org.javawebstack.command.io.BufferedOutput;
+import org.javawebstack.command.io.DefaultInput;
+
+import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Keeps a built CLI in a long running process and executes the commands sent by CommandDaemonClient, so the
+ * JVM startup and the route binding are only paid once.
+ * The daemon listens on a unix domain socket when the JVM supports them (Java 16+) and a socket path is set,
+ * otherwise on a loopback TCP port. The address and a random token are written to the address file, clients
+ * have to present the token, so only users that can read the file can execute commands.
+ * The working directory of the client is available to the commands as the session attribute WORKING_DIRECTORY.
+ */
+public class CommandDaemon implements Closeable {
+
+    public static final String WORKING_DIRECTORY = "daemon.workingDirectory";
+
+    private final CLI cli;
+    private Path socketPath;
+    private int port;
+    private Path addressFile;
+    private ExecutorService executor;
+    private boolean ownExecutor;
+    private ServerSocketChannel server;
+    private String address;
+    private final String token;
+    private volatile boolean closed;
+
+    public CommandDaemon(CLI cli) {
+        this.cli = cli;
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for(byte b : bytes)
+            sb.append(String.format("%02x", b));
+        this.token = sb.toString();
+    }
+
+    /**
+     * Sets the path of the unix domain socket, without it the daemon always uses TCP
+     */
+    public CommandDaemon socket(Path socketPath) {
+        this.socketPath = socketPath;
+        return this;
+    }
+
+    /**
+     * Sets the loopback TCP port that is used when unix domain sockets are unavailable, 0 picks a free port
+     */
+    public CommandDaemon port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public CommandDaemon addressFile(Path addressFile) {
+        this.addressFile = addressFile;
+        return this;
+    }
+
+    /**
+     * Sets the executor the connections are handled on, the default uses a daemon thread per connection.
+     * The executor belongs to the caller, close doesn't shut it down.
+     */
+    public CommandDaemon executor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Binds the socket and starts accepting connections in the background
+     */
+    public synchronized CommandDaemon start() throws IOException {
+        if(server != null)
+            throw new IllegalStateException("The daemon has already been started");
+        if(addressFile == null)
+            throw new IllegalStateException("The daemon needs an address file for the clients");
+        if(socketPath != null)
+            server = DaemonProtocol.openUnixServer(socketPath);
+        if(server != null) {
+            address = "unix:" + socketPath.toAbsolutePath();
+        } else {
+            server = DaemonProtocol.openTcpServer(port);
+            address = "tcp:" + server.socket().getLocalPort();
+        }
+        if(executor == null) {
+            executor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "command-daemon");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ownExecutor = true;
+        }
+        DaemonProtocol.writeAddressFile(addressFile, address, token);
+        Thread acceptor = new Thread(this::acceptLoop, "command-daemon-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    /**
+     * Starts the daemon and blocks until it has been closed
+     */
+    public void run() throws IOException, InterruptedException {
+        start();
+        synchronized (this) {
+            while (!closed)
+                wait();
+        }
+    }
+
+    /**
+     * @return the address clients connect to, "unix:&lt;path&gt;" or "tcp:&lt;port&gt;"
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    public synchronized void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+        notifyAll();
+        if(server != null)
+            server.close();
+        if(ownExecutor)
+            executor.shutdownNow();
+        if(address != null && address.startsWith("unix:"))
+            Files.deleteIfExists(Paths.get(address.substring(5)));
+        if(addressFile != null)
+            Files.deleteIfExists(addressFile);
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException ex) {
+                return;
+            } catch (IOException ex) {
+                continue;
+            }
+            try {
+                executor.execute(() -> handle(channel));
+            } catch (RejectedExecutionException ex) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(DaemonProtocol.inputStream(channel)));
+            DataOutputStream out = new DataOutputStream(DaemonProtocol.outputStream(channel));
+            String directory = null;
+            List<String> args = new ArrayList<>();
+            DaemonProtocol.Frame frame = DaemonProtocol.readFrame(in);
+            if(frame.type != DaemonProtocol.TOKEN || !MessageDigest.isEqual(frame.data, token.getBytes("UTF-8")))
+                return;
+            while ((frame = DaemonProtocol.readFrame(in)).type != DaemonProtocol.START) {
+                if(frame.type == DaemonProtocol.DIRECTORY)
+                    directory = frame.text();
+                else if(frame.type == DaemonProtocol.ARGUMENT)
+                    args.add(frame.text());
+                else
+                    throw new IOException("Unexpected frame " + (char) frame.type);
+            }
+            Connection connection = new Connection(out);
+            Thread reader = new Thread(() -> connection.readInput(in), "command-daemon-input");
+            reader.setDaemon(true);
+            reader.start();
+            BufferedOutput output = new BufferedOutput(connection.stream(DaemonProtocol.STDOUT), connection.stream(DaemonProtocol.STDERR));
+            DefaultInput input = new DefaultInput(connection.input);
+            CommandSession session = cli.session(input, output);
+            if(directory != null)
+                session.attrib(WORKING_DIRECTORY, Paths.get(directory));
+            boolean success;
+            try {
+                success = cli.dispatch(args.toArray(new String[0]), input, output, session).isSuccess();
+            } catch (RuntimeException ex) {
+                output.error(ex);
+                output.flush();
+                success = false;
+            }
+            connection.exit(success ? 0 : 1);
+        } catch (IOException | UncheckedIOException ex) {
+            // The client went away, there's no one to report it to
+        } finally {
+            closeQuietly(channel);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Nothing left to do
+        }
+    }
+
+    private static class Connection {
+
+        private static final byte[] END = new byte[0];
+
+        private final DataOutputStream out;
+        private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        private boolean inputRequested;
+        final InputStream input = new InputStream() {
+            private byte[] chunk;
+            private int position;
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int n = read(b, 0, 1);
+                return n < 0 ? -1 : b[0] & 0xFF;
+            }
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(len == 0)
+                    return 0;
+                if(chunk == END)
+                    return -1;
+                if(chunk == null || position == chunk.length) {
+                    requestInput();
+                    try {
+                        chunk = chunks.take();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                    position = 0;
+                    if(chunk == END)
+                        return -1;
+                }
+                int n = Math.min(len, chunk.length - position);
+                System.arraycopy(chunk, position, b, off, n);
+                position += n;
+                return n;
+            }
+        };
+
+        private Connection(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void readInput(DataInputStream in) {
+            try {
+                while (true) {
+                    DaemonProtocol.Frame frame = DaemonProtocol.readFrame(in);
+                    if(frame.type != DaemonProtocol.INPUT)
+                        continue;
+                    if(frame.data.length == 0)
+                        break;
+                    chunks.add(frame.data);
+                }
+            } catch (IOException ignored) {
+                // Client closed the connection
+            }
+            chunks.add(END);
+        }
+
+        private void requestInput() throws IOException {
+            synchronized (out) {
+                if(inputRequested)
+                    return;
+                inputRequested = true;
+                DaemonProtocol.writeFrame(out, DaemonProtocol.SEND_INPUT, END, 0, 0);
+                out.flush();
+            }
+        }
+
+        OutputStream stream(byte type) {
+            return new OutputStream() {
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+                public void write(byte[] b, int off, int len) throws IOException {
+                    synchronized (out) {
+                        while (len > 0) {
+                            int n = Math.min(len, DaemonProtocol.MAX_FRAME);
+                            DaemonProtocol.writeFrame(out, type, b, off, n);
+                            off += n;
+                            len -= n;
+                        }
+                    }
+                }
+                public void flush() throws IOException {
+                    synchronized (out) {
+                        out.flush();
+                    }
+                }
+            };
+        }
+
+        void exit(int code) throws IOException {
+            synchronized (out) {
+                DaemonProtocol.writeFrame(out, DaemonProtocol.EXIT, new byte[] { (byte) (code >> 24), (byte) (code >> 16), (byte) (code >> 8), (byte) code }, 0, 4);
+                out.flush();
+            }
+        }
+
+    }
+
+}
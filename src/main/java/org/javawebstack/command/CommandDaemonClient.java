@@ -0,0 +1,98 @@
+package org.javawebstack.command;
+
+import java.io.*;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Launcher that executes a command on a running CommandDaemon and exits with its result.
+ * Usage: java -cp ... org.javawebstack.command.CommandDaemonClient &lt;address file&gt; [args...]
+ */
+public class CommandDaemonClient {
+
+    public static void main(String[] args) {
+        if(args.length < 1) {
+            System.err.println("Usage: CommandDaemonClient <address file> [args...]");
+            System.exit(2);
+        }
+        int code;
+        try {
+            code = run(Paths.get(args[0]), Arrays.copyOfRange(args, 1, args.length), System.in, System.out, System.err);
+        } catch (IOException ex) {
+            System.err.println("Failed to reach the command daemon: " + ex.getMessage());
+            code = 2;
+        }
+        System.exit(code);
+    }
+
+    /**
+     * Sends the command to the daemon and copies its output until it has finished
+     * @return the exit code, 0 if the command was successful
+     */
+    public static int run(Path addressFile, String[] args, InputStream stdin, OutputStream stdout, OutputStream stderr) throws IOException {
+        String[] address = DaemonProtocol.readAddressFile(addressFile);
+        try (SocketChannel channel = DaemonProtocol.connect(address[0])) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(DaemonProtocol.inputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(DaemonProtocol.outputStream(channel)));
+            DaemonProtocol.writeFrame(out, DaemonProtocol.TOKEN, address[1]);
+            DaemonProtocol.writeFrame(out, DaemonProtocol.DIRECTORY, System.getProperty("user.dir"));
+            for(String arg : args)
+                DaemonProtocol.writeFrame(out, DaemonProtocol.ARGUMENT, arg);
+            DaemonProtocol.writeFrame(out, DaemonProtocol.START, new byte[0], 0, 0);
+            out.flush();
+            boolean inputStarted = false;
+            while (true) {
+                DaemonProtocol.Frame frame;
+                try {
+                    frame = DaemonProtocol.readFrame(in);
+                } catch (EOFException ex) {
+                    throw new IOException("The daemon closed the connection");
+                }
+                switch (frame.type) {
+                    case DaemonProtocol.STDOUT:
+                        stdout.write(frame.data);
+                        stdout.flush();
+                        break;
+                    case DaemonProtocol.STDERR:
+                        stderr.write(frame.data);
+                        stderr.flush();
+                        break;
+                    case DaemonProtocol.SEND_INPUT:
+                        if(!inputStarted) {
+                            inputStarted = true;
+                            Thread pump = new Thread(() -> pumpInput(stdin, out), "command-daemon-client-input");
+                            pump.setDaemon(true);
+                            pump.start();
+                        }
+                        break;
+                    case DaemonProtocol.EXIT:
+                        return new DataInputStream(new ByteArrayInputStream(frame.data)).readInt();
+                    default:
+                        throw new IOException("Unexpected frame " + (char) frame.type);
+                }
+            }
+        }
+    }
+
+    private static void pumpInput(InputStream stdin, DataOutputStream out) {
+        byte[] buffer = new byte[8192];
+        try {
+            int n;
+            while ((n = stdin.read(buffer)) > 0) {
+                synchronized (out) {
+                    DaemonProtocol.writeFrame(out, DaemonProtocol.INPUT, buffer, 0, n);
+                    out.flush();
+                }
+            }
+            synchronized (out) {
+                DaemonProtocol.writeFrame(out, DaemonProtocol.INPUT, buffer, 0, 0);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // The command finished before the input was consumed
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package org.javawebstack.command;
+
+import org.javawebstack.command.io.Output;
+
+public class CommandResult {
+
+    private final String[] args;
+    private final boolean matched;
+    private final boolean success;
+    private final long duration;
+    private Output output;
+
+    public CommandResult(String[] args, boolean matched, boolean success, long duration, Output output) {
+        this.args = args;
+        this.matched = matched;
+        this.success = success;
+        this.duration = duration;
+        this.output = output;
+    }
+
+    public String[] getArgs() {
+        return args;
+    }
+
+    public boolean isMatched() {
+        return matched;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return execution time in nanoseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the output the command has written to, null if it has been written to a shared output
+     */
+    public Output getOutput() {
+        return output;
+    }
+
+    void setOutput(Output output) {
+        this.output = output;
+    }
+
+}
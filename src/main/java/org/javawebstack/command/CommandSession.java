@@ -0,0 +1,104 @@
+package org.javawebstack.command;
+
+import org.javawebstack.command.io.Input;
+import org.javawebstack.command.io.Output;
+import org.javawebstack.command.util.CommandLineTokenizer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads command lines from an input and executes them one after another on the same CLI.
+ * Attributes set on the session are kept across commands and are visible through CommandContext.attrib.
+ */
+public class CommandSession {
+
+    private final CLI cli;
+    private final Input input;
+    private final Output output;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private String prompt;
+    private volatile boolean stopped;
+    private int executed;
+    private int failed;
+
+    public CommandSession(CLI cli, Input input, Output output) {
+        this.cli = cli;
+        this.input = input;
+        this.output = output;
+    }
+
+    public CommandSession prompt(String prompt) {
+        this.prompt = prompt;
+        return this;
+    }
+
+    /**
+     * Executes commands until the end of the input has been reached or the session has been stopped.
+     * Empty lines and lines starting with '#' are skipped.
+     * @return true if all commands were successful
+     */
+    public boolean run() {
+        stopped = false;
+        boolean success = true;
+        while (!stopped) {
+            if(prompt != null && output != null) {
+                output.write(prompt);
+                output.flush();
+            }
+            String line = input.readLine();
+            if(line == null)
+                break;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] args;
+            try {
+                args = CommandLineTokenizer.tokenize(line);
+            } catch (IllegalArgumentException ex) {
+                if(output != null)
+                    output.error(ex.getMessage());
+                failed++;
+                success = false;
+                continue;
+            }
+            executed++;
+            // Contained, so a runtime exception of one line is reported like a failed command instead of ending the session
+            if(!cli.dispatch(args, input, output, this, true).isSuccess()) {
+                failed++;
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public CommandSession attrib(String key, Object value) {
+        if(value == null) {
+            attributes.remove(key);
+        } else {
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    public <T> T attrib(String key) {
+        return (T) attributes.get(key);
+    }
+
+    public CLI getCLI() {
+        return cli;
+    }
+
+    public int getExecuted() {
+        return executed;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+}
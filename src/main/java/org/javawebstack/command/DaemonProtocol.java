@@ -0,0 +1,200 @@
+package org.javawebstack.command;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+/**
+ * Wire format shared by CommandDaemon and CommandDaemonClient. Every frame is a type byte, the payload length as int
+ * and the payload. The client sends the token, the working directory and the arguments followed by START.
+ * The daemon answers with output frames, asks for stdin with SEND_INPUT and ends with the exit code.
+ */
+class DaemonProtocol {
+
+    static final byte TOKEN = 'K';
+    static final byte DIRECTORY = 'D';
+    static final byte ARGUMENT = 'A';
+    static final byte START = 'C';
+    /**
+     * Chunk of stdin, an empty chunk marks the end of the input
+     */
+    static final byte INPUT = 'I';
+    static final byte SEND_INPUT = 'S';
+    static final byte STDOUT = 'O';
+    static final byte STDERR = 'E';
+    static final byte EXIT = 'X';
+
+    static final int MAX_FRAME = 1024 * 1024;
+
+    static void writeFrame(DataOutputStream out, byte type, byte[] data, int offset, int length) throws IOException {
+        out.writeByte(type);
+        out.writeInt(length);
+        out.write(data, offset, length);
+    }
+
+    static void writeFrame(DataOutputStream out, byte type, String data) throws IOException {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        writeFrame(out, type, bytes, 0, bytes.length);
+    }
+
+    static Frame readFrame(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        int length = in.readInt();
+        if(length < 0 || length > MAX_FRAME)
+            throw new IOException("Invalid frame length " + length);
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new Frame(type, data);
+    }
+
+    /**
+     * Opens a unix domain socket server through reflection, as they are only available since Java 16
+     * @return the bound channel or null if unix domain sockets aren't supported
+     */
+    static ServerSocketChannel openUnixServer(Path path) throws IOException {
+        ProtocolFamily unix = unixFamily();
+        if(unix == null)
+            return null;
+        ServerSocketChannel channel;
+        try {
+            channel = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+        } catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+            return null;
+        }
+        Files.deleteIfExists(path);
+        channel.bind(unixAddress(path));
+        return channel;
+    }
+
+    static ServerSocketChannel openTcpServer(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        return channel;
+    }
+
+    /**
+     * @param address "unix:&lt;path&gt;" or "tcp:&lt;port&gt;"
+     */
+    static SocketChannel connect(String address) throws IOException {
+        if(address.startsWith("unix:")) {
+            ProtocolFamily unix = unixFamily();
+            if(unix == null)
+                throw new IOException("Unix domain sockets are not supported by this JVM");
+            SocketChannel channel;
+            try {
+                channel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+            } catch (ReflectiveOperationException ex) {
+                throw new IOException("Unix domain sockets are not supported by this JVM", ex);
+            }
+            channel.connect(unixAddress(Paths.get(address.substring(5))));
+            return channel;
+        }
+        if(address.startsWith("tcp:"))
+            return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address.substring(4))));
+        throw new IOException("Invalid daemon address '" + address + "'");
+    }
+
+    private static ProtocolFamily unixFamily() {
+        try {
+            return StandardProtocolFamily.valueOf("UNIX");
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static SocketAddress unixAddress(Path path) throws IOException {
+        try {
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class).invoke(null, path);
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException("Unix domain sockets are not supported by this JVM", ex);
+        }
+    }
+
+    /**
+     * Writes the address and the token to a file only the owner can read
+     */
+    static void writeAddressFile(Path file, String address, String token) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try {
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException ignored) {
+                // Not a posix file system
+            }
+            Files.write(temp, (address + "\n" + token + "\n").getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return the address and the token
+     */
+    static String[] readAddressFile(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if(lines.size() < 2)
+            throw new IOException("Invalid daemon address file " + file);
+        return new String[] { lines.get(0).trim(), lines.get(1).trim() };
+    }
+
+    /**
+     * Streams over the channel that read and write independently. The streams of Channels lock the channel for
+     * both, so a blocked read would block all output.
+     */
+    static InputStream inputStream(ByteChannel channel) {
+        return new InputStream() {
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int n = read(b, 0, 1);
+                return n < 0 ? -1 : b[0] & 0xFF;
+            }
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(len == 0)
+                    return 0;
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    static OutputStream outputStream(ByteChannel channel) {
+        return new OutputStream() {
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+        };
+    }
+
+    static class Frame {
+
+        final byte type;
+        final byte[] data;
+
+        Frame(byte type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+
+        String text() {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+
+    }
+
+}
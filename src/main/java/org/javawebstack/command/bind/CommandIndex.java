@@ -0,0 +1,215 @@
+package org.javawebstack.command.bind;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Index of all controllers that has been generated at compile time by the CommandIndexProcessor (command-processor).
+ * It allows binding controllers without scanning the classpath and without walking their methods.
+ */
+public class CommandIndex {
+
+    public static final String RESOURCE = "META-INF/javawebstack/command-index";
+
+    private final List<Controller> controllers = new ArrayList<>();
+    private final Set<String> packages = new HashSet<>();
+
+    /**
+     * Loads and merges all indices visible to the class loader
+     * @param classLoader class loader to load the index resources from
+     * @return the index or null if there is none
+     */
+    public static CommandIndex load(ClassLoader classLoader) {
+        try {
+            Enumeration<URL> resources = classLoader.getResources(RESOURCE);
+            if(!resources.hasMoreElements())
+                return null;
+            CommandIndex index = new CommandIndex();
+            while (resources.hasMoreElements()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(resources.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    index.read(reader);
+                }
+            }
+            return index;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void read(BufferedReader reader) throws IOException {
+        Controller controller = null;
+        CommandMethod method = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] spl = line.split("\t");
+            for(int i=1; i<spl.length; i++)
+                spl[i] = unescape(spl[i]);
+            switch (spl[0]) {
+                case "package":
+                    packages.add(spl[1]);
+                    break;
+                case "controller":
+                    controller = new Controller(spl[1]);
+                    method = null;
+                    controllers.add(controller);
+                    break;
+                case "supertype":
+                    requireController(controller, line).supertypes.add(spl[1]);
+                    break;
+                case "prefix":
+                    requireController(controller, line).prefixes.add(spl[1]);
+                    break;
+                case "with":
+                    if(method != null) {
+                        method.middlewares.add(spl[1]);
+                    } else {
+                        requireController(controller, line).middlewares.add(spl[1]);
+                    }
+                    break;
+                case "method":
+                    method = new CommandMethod(spl[1], spl[2], Arrays.asList(spl).subList(3, spl.length));
+                    requireController(controller, line).methods.add(method);
+                    break;
+                case "command":
+                    if(method == null)
+                        throw new IllegalStateException("Invalid command index line: " + line);
+                    method.commands.add(spl[1]);
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid command index line: " + line);
+            }
+        }
+    }
+
+    private static Controller requireController(Controller controller, String line) {
+        if(controller == null)
+            throw new IllegalStateException("Invalid command index line: " + line);
+        return controller;
+    }
+
+    public List<Controller> getControllers() {
+        return controllers;
+    }
+
+    /**
+     * @param parentClass class or interface the controllers need to extend
+     * @param p package the controllers need to be in (including sub packages)
+     * @return all indexed controllers matching the filter
+     */
+    public List<Controller> getControllers(Class<?> parentClass, Package p) {
+        String packagePrefix = p.getName() + ".";
+        List<Controller> result = new ArrayList<>();
+        for(Controller controller : controllers) {
+            if(!controller.className.startsWith(packagePrefix))
+                continue;
+            if(controller.className.equals(parentClass.getName()) || controller.supertypes.contains(parentClass.getName()))
+                result.add(controller);
+        }
+        return result;
+    }
+
+    /**
+     * @return whether classes of the package have been compiled with the processor, only then the index is complete for it
+     */
+    public boolean covers(Package p) {
+        return packages.contains(p.getName());
+    }
+
+    public static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String s) {
+        if(s.indexOf('\\') == -1)
+            return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '\\' && i + 1 < s.length()) {
+                char n = s.charAt(++i);
+                sb.append(n == 't' ? '\t' : n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    public static class Controller {
+
+        private final String className;
+        private final List<String> supertypes = new ArrayList<>();
+        private final List<String> prefixes = new ArrayList<>();
+        private final List<String> middlewares = new ArrayList<>();
+        private final List<CommandMethod> methods = new ArrayList<>();
+
+        public Controller(String className) {
+            this.className = className;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public List<String> getSupertypes() {
+            return supertypes;
+        }
+
+        public List<String> getPrefixes() {
+            return prefixes;
+        }
+
+        public List<String> getMiddlewares() {
+            return middlewares;
+        }
+
+        public List<CommandMethod> getMethods() {
+            return methods;
+        }
+
+    }
+
+    public static class CommandMethod {
+
+        private final String declaringClass;
+        private final String name;
+        private final List<String> parameterTypes;
+        private final List<String> commands = new ArrayList<>();
+        private final List<String> middlewares = new ArrayList<>();
+
+        public CommandMethod(String declaringClass, String name, List<String> parameterTypes) {
+            this.declaringClass = declaringClass;
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+        }
+
+        public String getDeclaringClass() {
+            return declaringClass;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getParameterTypes() {
+            return parameterTypes;
+        }
+
+        public List<String> getCommands() {
+            return commands;
+        }
+
+        public List<String> getMiddlewares() {
+            return middlewares;
+        }
+
+    }
+
+}
@@ -8,30 +8,73 @@ import org.javawebstack.command.bind.annotation.param.Attrib;
 import org.javawebstack.command.bind.annotation.param.Param;
 import org.javawebstack.command.CommandContext;
 import org.javawebstack.command.handler.CommandHandler;
-import org.javawebstack.command.router.CommandRoute;
+import org.javawebstack.command.router.*;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CommandRouteBinder {
 
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+
+    static {
+        for (Class<?> type : new Class[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class})
+            PRIMITIVES.put(type.getName(), type);
+    }
+
     private final CLI cli;
+    private final List<CommandIndex.Controller> boundControllers = new ArrayList<>();
+    /**
+     * Controller methods and middleware names behind the handlers of bound routes, used to write RouteSnapshots
+     */
+    private final Map<CommandHandler, Origin> origins = Collections.synchronizedMap(new WeakHashMap<>());
 
     public CommandRouteBinder(CLI cli) {
         this.cli = cli;
     }
 
+    /**
+     * @return all controllers bound so far in the index format, e.g. to generate configuration for ahead of time compilation
+     */
+    public synchronized List<CommandIndex.Controller> getBoundControllers() {
+        return new ArrayList<>(boundControllers);
+    }
+
     public void bind(String globalPrefix, Object controller) {
-        List<String> prefixes = Arrays.stream(controller.getClass().getDeclaredAnnotationsByType(CommandPrefix.class)).map(CommandPrefix::value).collect(Collectors.toCollection(ArrayList::new));
+        bindClass(globalPrefix, controller.getClass(), method -> new BindHandler(cli, controller, method));
+    }
+
+    /**
+     * Registers the routes of a controller class without creating it. The controller and its invoker are created
+     * the first time one of its routes is executed.
+     * @param globalPrefix prefix for all commands of the controller
+     * @param type class of the controller
+     * @param controllerSupplier creates the controller instance, called at most once
+     */
+    public void bindLazy(String globalPrefix, Class<?> type, Supplier<Object> controllerSupplier) {
+        Lazy<Object> controller = new Lazy<>(controllerSupplier);
+        bindClass(globalPrefix, type, method -> new LazyBindHandler(cli, controller, () -> method));
+    }
+
+    private void bindClass(String globalPrefix, Class<?> type, Function<Method, CommandHandler> handlerFactory) {
+        List<String> prefixes = Arrays.stream(type.getDeclaredAnnotationsByType(CommandPrefix.class)).map(CommandPrefix::value).collect(Collectors.toCollection(ArrayList::new));
         if (prefixes.size() == 0)
             prefixes.add("");
-        With with = Arrays.stream(controller.getClass().getDeclaredAnnotationsByType(With.class)).findFirst().orElse(null);
+        List<SimpleCommandDeclaration> prefixDecls = prefixDeclarations(globalPrefix, prefixes);
+        With with = Arrays.stream(type.getDeclaredAnnotationsByType(With.class)).findFirst().orElse(null);
+        CommandIndex.Controller bound = new CommandIndex.Controller(type.getName());
 
-        for (Method method : getMethodsRecursive(controller.getClass())) {
+        for (Method method : getMethodsRecursive(type)) {
             List<String> commands = new ArrayList<>();
             With methodWith = getAnnotations(With.class, method).stream().findFirst().orElse(null);
             List<String> middlewares = new ArrayList<>();
@@ -45,26 +88,259 @@ public class CommandRouteBinder {
             }
 
             if (commands.size() > 0) {
-                BindHandler handler = new BindHandler(cli, controller, method);
-                SimpleCommandDeclaration globalDecl = new SimpleCommandDeclaration();
-                if(globalPrefix != null && globalPrefix.length() > 0)
-                    globalDecl.parse(globalPrefix, true);
-                for (String prefix : prefixes) {
-                    SimpleCommandDeclaration prefixDecl = globalDecl.clone();
-                    if(prefix != null && prefix.length() > 0)
-                        prefixDecl.parse(prefix, true);
-                    for (String command : commands) {
-                        SimpleCommandDeclaration commandDecl = prefixDecl.clone();
-                        commandDecl.parse(command, false);
-                        CommandRoute route = commandDecl.create(cli.getResolvers());
-                        route.handler(handler);
-                        bindMiddlewares(route, middlewares);
+                CommandIndex.CommandMethod boundMethod = new CommandIndex.CommandMethod(method.getDeclaringClass().getName(), method.getName(), Arrays.stream(method.getParameterTypes()).map(Class::getName).collect(Collectors.toList()));
+                boundMethod.getCommands().addAll(commands);
+                bound.getMethods().add(boundMethod);
+                bindMethod(prefixDecls, handlerFactory.apply(method), commands, middlewares, new Origin(type.getName(), boundMethod, middlewares));
+            }
+        }
+        synchronized (this) {
+            boundControllers.add(bound);
+        }
+    }
+
+    /**
+     * Binds a controller using the information from the compile time index instead of reflection
+     * @param globalPrefix prefix for all commands of the controller
+     * @param controller controller instance
+     * @param indexed index entry of the controller
+     */
+    public void bind(String globalPrefix, Object controller, CommandIndex.Controller indexed) {
+        ClassLoader classLoader = controller.getClass().getClassLoader();
+        bindIndexed(globalPrefix, indexed, indexedMethod -> new BindHandler(cli, controller, findMethod(indexedMethod, classLoader)));
+    }
+
+    /**
+     * Registers the routes of an indexed controller without loading its class. The class is loaded and the controller
+     * created the first time one of its routes is executed.
+     * @param globalPrefix prefix for all commands of the controller
+     * @param indexed index entry of the controller
+     * @param classLoader class loader to load the controller with
+     * @param initiator creates the controller instance, called at most once
+     */
+    public void bindLazy(String globalPrefix, CommandIndex.Controller indexed, ClassLoader classLoader, Function<Class<?>, Object> initiator) {
+        Lazy<Object> controller = new Lazy<>(() -> {
+            try {
+                return initiator.apply(Class.forName(indexed.getClassName(), true, classLoader));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("The command index is outdated, can not find controller " + indexed.getClassName(), e);
+            }
+        });
+        bindIndexed(globalPrefix, indexed, indexedMethod -> new LazyBindHandler(cli, controller, () -> findMethod(indexedMethod, classLoader)));
+    }
+
+    private void bindIndexed(String globalPrefix, CommandIndex.Controller indexed, Function<CommandIndex.CommandMethod, CommandHandler> handlerFactory) {
+        List<String> prefixes = new ArrayList<>(indexed.getPrefixes());
+        if (prefixes.size() == 0)
+            prefixes.add("");
+        List<SimpleCommandDeclaration> prefixDecls = prefixDeclarations(globalPrefix, prefixes);
+        for (CommandIndex.CommandMethod indexedMethod : indexed.getMethods()) {
+            List<String> middlewares = new ArrayList<>(indexed.getMiddlewares());
+            middlewares.addAll(indexedMethod.getMiddlewares());
+            bindMethod(prefixDecls, handlerFactory.apply(indexedMethod), indexedMethod.getCommands(), middlewares, new Origin(indexed.getClassName(), indexedMethod, middlewares));
+        }
+        synchronized (this) {
+            boundControllers.add(indexed);
+        }
+    }
+
+    private static Method findMethod(CommandIndex.CommandMethod indexedMethod, ClassLoader classLoader) {
+        try {
+            Class<?>[] parameterTypes = new Class[indexedMethod.getParameterTypes().size()];
+            for (int i = 0; i < parameterTypes.length; i++)
+                parameterTypes[i] = loadClass(indexedMethod.getParameterTypes().get(i), classLoader);
+            return loadClass(indexedMethod.getDeclaringClass(), classLoader).getDeclaredMethod(indexedMethod.getName(), parameterTypes);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new IllegalStateException("The command index is outdated, can not find method " + indexedMethod.getDeclaringClass() + "." + indexedMethod.getName(), e);
+        }
+    }
+
+    /**
+     * Parses the prefixes once per controller, the commands of all methods are parsed into clones that share them
+     */
+    private static List<SimpleCommandDeclaration> prefixDeclarations(String globalPrefix, List<String> prefixes) {
+        SimpleCommandDeclaration globalDecl = new SimpleCommandDeclaration();
+        if(globalPrefix != null && globalPrefix.length() > 0)
+            globalDecl.parse(globalPrefix, true);
+        List<SimpleCommandDeclaration> prefixDecls = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) {
+            SimpleCommandDeclaration prefixDecl = globalDecl.clone();
+            if(prefix != null && prefix.length() > 0)
+                prefixDecl.parse(prefix, true);
+            prefixDecls.add(prefixDecl);
+        }
+        return prefixDecls;
+    }
+
+    private void bindMethod(List<SimpleCommandDeclaration> prefixDecls, CommandHandler handler, List<String> commands, List<String> middlewares, Origin origin) {
+        origins.put(handler, origin);
+        for (SimpleCommandDeclaration prefixDecl : prefixDecls) {
+            for (String command : commands) {
+                SimpleCommandDeclaration commandDecl = prefixDecl.clone();
+                commandDecl.parse(command, false);
+                CommandRoute route = commandDecl.create(cli.getResolvers());
+                route.handler(handler);
+                bindMiddlewares(route, middlewares);
+                cli.route(route);
+            }
+        }
+    }
+
+    /**
+     * Captures all currently registered routes of bound controllers, routes with other handlers are not included.
+     * All resolvers used by the routes need to be registered by name.
+     */
+    public RouteSnapshot snapshot() {
+        Map<Function<String, Object>, String> resolverNames = new IdentityHashMap<>();
+        for (Map.Entry<String, Function<String, Object>> entry : cli.getResolvers().entrySet())
+            resolverNames.put(entry.getValue(), entry.getKey());
+        resolverNames.put(CommandRoute.IDENTITY_RESOLVER, "");
+        List<RouteSnapshot.Route> routes = new ArrayList<>();
+        for (CommandRoute route : cli.getRoutes()) {
+            Origin origin = route.getHandler() != null ? origins.get(route.getHandler()) : null;
+            if (origin == null)
+                continue;
+            RouteSnapshot.Route r = new RouteSnapshot.Route();
+            r.controllerClass = origin.controllerClass;
+            r.declaringClass = origin.method.getDeclaringClass();
+            r.methodName = origin.method.getName();
+            r.parameterTypes = origin.method.getParameterTypes().toArray(new String[0]);
+            r.middlewares = origin.middlewares.toArray(new String[0]);
+            List<RouteSegment> segments = route.getSegments();
+            r.segments = new String[segments.size()];
+            r.segmentResolvers = new String[segments.size()];
+            for (int i = 0; i < segments.size(); i++) {
+                r.segments[i] = segments.get(i).getName();
+                if (segments.get(i).isDynamic())
+                    r.segmentResolvers[i] = resolverName(resolverNames, segments.get(i).getResolver(), route);
+            }
+            List<RouteArgument> arguments = route.getArguments();
+            r.arguments = new String[arguments.size()];
+            r.argumentResolvers = new String[arguments.size()];
+            r.argumentFlags = new byte[arguments.size()];
+            for (int i = 0; i < arguments.size(); i++) {
+                RouteArgument argument = arguments.get(i);
+                r.arguments[i] = argument.getName();
+                r.argumentResolvers[i] = resolverName(resolverNames, argument.getResolver(), route);
+                r.argumentFlags[i] = RouteSnapshot.Route.flags(argument.isRequired(), argument.isVarArg(), argument.isStreaming(), argument.isPrevalidated());
+            }
+            List<RouteOption> options = route.getOptions();
+            r.options = new String[options.size()];
+            r.optionFlags = new byte[options.size()];
+            r.optionParameters = new String[options.size()][];
+            r.optionResolvers = new String[options.size()][];
+            for (int i = 0; i < options.size(); i++) {
+                RouteOption option = options.get(i);
+                r.options[i] = option.getName();
+                r.optionFlags[i] = RouteSnapshot.Route.flags(option.isRequired(), option.isRepeatable(), false, false);
+                List<RouteOptionParameter> parameters = option.getParameters();
+                r.optionParameters[i] = new String[parameters.size()];
+                r.optionResolvers[i] = new String[parameters.size()];
+                for (int j = 0; j < parameters.size(); j++) {
+                    r.optionParameters[i][j] = parameters.get(j).getName();
+                    r.optionResolvers[i][j] = resolverName(resolverNames, parameters.get(j).getResolver(), route);
+                }
+            }
+            routes.add(r);
+        }
+        return new RouteSnapshot(routes);
+    }
+
+    private static String resolverName(Map<Function<String, Object>, String> resolverNames, Function<String, Object> resolver, CommandRoute route) {
+        if (resolver == null)
+            return null;
+        String name = resolverNames.get(resolver);
+        if (name == null)
+            throw new IllegalStateException("Can not snapshot route '" + route.getSegments().stream().map(RouteSegment::getName).collect(Collectors.joining(" ")) + "', it uses a resolver that isn't registered by name");
+        return name;
+    }
+
+    /**
+     * Registers the routes of a snapshot. The resolvers and middlewares are looked up by name, the controllers are
+     * loaded and created the first time one of their routes is executed.
+     * @param snapshot the snapshot to restore
+     * @param classLoader class loader to load the controllers with
+     * @param initiator creates the controller instances
+     */
+    public void restore(RouteSnapshot snapshot, ClassLoader classLoader, Function<Class<?>, Object> initiator) {
+        Map<String, Lazy<Object>> controllers = new HashMap<>();
+        Map<String, CommandIndex.Controller> restored = new LinkedHashMap<>();
+        Map<List<String>, CommandHandler> handlers = new HashMap<>();
+        List<CommandRoute> routes = new ArrayList<>(snapshot.routes.size());
+        for (RouteSnapshot.Route r : snapshot.routes) {
+            List<String> key = new ArrayList<>(Arrays.asList(r.controllerClass, r.declaringClass, r.methodName));
+            key.addAll(Arrays.asList(r.parameterTypes));
+            key.add("");
+            key.addAll(Arrays.asList(r.middlewares));
+            CommandHandler handler = handlers.computeIfAbsent(key, k -> {
+                Lazy<Object> controller = controllers.computeIfAbsent(r.controllerClass, className -> new Lazy<>(() -> {
+                    try {
+                        return initiator.apply(Class.forName(className, true, classLoader));
+                    } catch (ClassNotFoundException e) {
+                        throw new IllegalStateException("The route snapshot is outdated, can not find controller " + className, e);
                     }
+                }));
+                CommandIndex.CommandMethod method = new CommandIndex.CommandMethod(r.declaringClass, r.methodName, Arrays.asList(r.parameterTypes));
+                restored.computeIfAbsent(r.controllerClass, CommandIndex.Controller::new).getMethods().add(method);
+                LazyBindHandler lazyHandler = new LazyBindHandler(cli, controller, () -> findMethod(method, classLoader));
+                origins.put(lazyHandler, new Origin(r.controllerClass, method, Arrays.asList(r.middlewares)));
+                return lazyHandler;
+            });
+            CommandRoute route = new CommandRoute();
+            for (int i = 0; i < r.segments.length; i++) {
+                if (r.segmentResolvers[i] == null) {
+                    route.segment(r.segments[i]);
+                } else {
+                    route.dynamicSegment(r.segments[i], resolver(r.segmentResolvers[i]));
                 }
             }
+            for (int i = 0; i < r.arguments.length; i++) {
+                boolean required = RouteSnapshot.Route.isRequired(r.argumentFlags[i]);
+                if (RouteSnapshot.Route.isStreaming(r.argumentFlags[i])) {
+                    route.streamVarArg(r.arguments[i], required, resolver(r.argumentResolvers[i]), RouteSnapshot.Route.isPrevalidated(r.argumentFlags[i]));
+                } else if (RouteSnapshot.Route.isVariadic(r.argumentFlags[i])) {
+                    route.varArg(r.arguments[i], required, resolver(r.argumentResolvers[i]));
+                } else {
+                    route.arg(r.arguments[i], required, resolver(r.argumentResolvers[i]));
+                }
+            }
+            for (int i = 0; i < r.options.length; i++) {
+                String[] parameters = r.optionParameters[i];
+                String[] resolvers = r.optionResolvers[i];
+                route.option(r.options[i], RouteSnapshot.Route.isRequired(r.optionFlags[i]), RouteSnapshot.Route.isVariadic(r.optionFlags[i]), o -> {
+                    for (int j = 0; j < parameters.length; j++)
+                        o.param(parameters[j], resolver(resolvers[j]));
+                });
+            }
+            route.handler(handler);
+            bindMiddlewares(route, Arrays.asList(r.middlewares));
+            routes.add(route);
+        }
+        for (CommandRoute route : routes)
+            cli.route(route);
+        synchronized (this) {
+            boundControllers.addAll(restored.values());
         }
     }
 
+    private Function<String, Object> resolver(String name) {
+        if (name == null)
+            return null;
+        if (name.isEmpty())
+            return CommandRoute.IDENTITY_RESOLVER;
+        Function<String, Object> resolver = cli.getResolvers().get(name);
+        if (resolver == null)
+            throw new IllegalArgumentException("Unknown resolver " + name);
+        return resolver;
+    }
+
+    private static Class<?> loadClass(String name, ClassLoader classLoader) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        if (primitive != null)
+            return primitive;
+        return Class.forName(name, false, classLoader);
+    }
+
     private void bindMiddlewares(CommandRoute route, List<String> middlewares) {
         for (String name : middlewares) {
             CommandHandler before = cli.getBeforeMiddleware(name);
@@ -84,16 +360,6 @@ public class CommandRouteBinder {
         return Arrays.asList(method.getDeclaredAnnotationsByType(type));
     }
 
-    private static <T extends Annotation> T getAnnotation(Class<T> type, Method method, int param) {
-        if (param < 0)
-            return null;
-        Parameter[] parameters = method.getParameters();
-        if (param >= parameters.length)
-            return null;
-        T[] annotations = parameters[param].getDeclaredAnnotationsByType(type);
-        return annotations.length == 0 ? null : annotations[0];
-    }
-
     private static List<Method> getMethodsRecursive(Class<?> type) {
         List<Method> methods = new ArrayList<>(Arrays.asList(type.getDeclaredMethods()));
         if (type.getSuperclass() != null && type.getSuperclass() != Object.class)
@@ -103,67 +369,186 @@ public class CommandRouteBinder {
 
     private static class BindMapper {
 
-        private final CLI cli;
-        private final Object controller;
-        private final Method method;
-        private final Object[] parameterAnnotations;
-        private final Class<?>[] parameterTypes;
-        private final String[] defaultValues;
+        private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+        /**
+         * Takes a BindFrame and passes the value of every parameter through a filter that extracts it from the frame,
+         * so values of primitive arguments are passed to the method without boxing
+         */
+        private final MethodHandle handle;
 
         public BindMapper(CLI cli, Object controller, Method method) {
-            this.cli = cli;
-            this.controller = controller;
-            this.method = method;
             method.setAccessible(true);
-            parameterTypes = method.getParameterTypes();
-            parameterAnnotations = new Object[parameterTypes.length];
-            defaultValues = new String[parameterTypes.length];
-            for (int i = 0; i < parameterAnnotations.length; i++) {
-
-                for (Class<? extends Annotation> annotation : new Class[]{Attrib.class, Arg.class, Param.class}) {
-                    Annotation annotation1 = getAnnotation(annotation, method, i);
-                    if (annotation1 != null) {
-                        parameterAnnotations[i] = annotation1;
-                    }
+            try {
+                MethodHandle target = LOOKUP.unreflect(method).asFixedArity();
+                if (!Modifier.isStatic(method.getModifiers()))
+                    target = target.bindTo(controller);
+                target = target.asType(target.type().changeReturnType(void.class));
+                Parameter[] parameters = method.getParameters();
+                if (parameters.length == 0) {
+                    handle = MethodHandles.dropArguments(target, 0, BindFrame.class);
+                } else {
+                    MethodHandle[] filters = new MethodHandle[parameters.length];
+                    for (int i = 0; i < parameters.length; i++)
+                        filters[i] = parameterFilter(cli, parameters[i]);
+                    handle = MethodHandles.permuteArguments(MethodHandles.filterArguments(target, 0, filters), MethodType.methodType(void.class, BindFrame.class), new int[parameters.length]);
                 }
+            } catch (IllegalAccessException | NoSuchMethodException e) {
+                throw new IllegalStateException("Can not access command method " + method, e);
+            }
+        }
 
-                if (parameterAnnotations[i] == null)
-                    parameterAnnotations[i] = parameterTypes[i];
+        private static MethodHandle parameterFilter(CLI cli, Parameter parameter) throws NoSuchMethodException, IllegalAccessException {
+            Class<?> type = parameter.getType();
+            MethodHandle filter;
+            Param param = parameter.getDeclaredAnnotation(Param.class);
+            Arg arg = parameter.getDeclaredAnnotation(Arg.class);
+            Attrib attrib = parameter.getDeclaredAnnotation(Attrib.class);
+            if (param != null) {
+                filter = frameFilter("param", Object.class, param.value());
+            } else if (arg != null) {
+                filter = frameFilter(argFilterName(type), argFilterType(type), arg.value());
+            } else if (attrib != null) {
+                filter = frameFilter("attrib", Object.class, attrib.value());
+            } else {
+                filter = MethodHandles.insertArguments(LOOKUP.findStatic(BindMapper.class, "autoInject", MethodType.methodType(Object.class, CLI.class, Class.class, BindFrame.class)), 0, cli, type);
             }
+            return filter.asType(MethodType.methodType(type, BindFrame.class));
         }
 
-        public void invoke(CommandContext context, Map<String, Object> extraArgs) {
-            Object[] args = new Object[parameterAnnotations.length];
-            for (int i = 0; i < args.length; i++) {
-                Object a = parameterAnnotations[i];
-                if (a == null)
-                    continue;
-                if (a instanceof Attrib) {
-                    Attrib attrib = (Attrib) parameterAnnotations[i];
-                    args[i] = context.attrib(attrib.value());
-                } else if (a instanceof Arg) {
-                    Arg arg = (Arg) parameterAnnotations[i];
-                    args[i] = context.arg(arg.value());
-                } else if (a instanceof Param) {
-                    Param param = (Param) parameterAnnotations[i];
-                    args[i] = context.param(param.value());
-                } else {
-                    for (AutoInjector autoInjector : cli.getAutoInjectors()) {
-                        args[i] = autoInjector.getValue(context, extraArgs, parameterTypes[i]);
-                        if (args[i] != null)
-                            break;
-                    }
-                }
+        private static MethodHandle frameFilter(String name, Class<?> returnType, String key) throws NoSuchMethodException, IllegalAccessException {
+            return MethodHandles.insertArguments(LOOKUP.findStatic(BindMapper.class, name, MethodType.methodType(returnType, String.class, BindFrame.class)), 0, key);
+        }
+
+        private static String argFilterName(Class<?> type) {
+            if (type == int.class)
+                return "argInt";
+            if (type == long.class)
+                return "argLong";
+            if (type == double.class)
+                return "argDouble";
+            if (type == boolean.class)
+                return "argBoolean";
+            if (type == int[].class)
+                return "varArgInts";
+            if (type == long[].class)
+                return "varArgLongs";
+            if (type == double[].class)
+                return "varArgDoubles";
+            if (type == boolean[].class)
+                return "varArgBooleans";
+            if (type == List.class || type == Collection.class || type == Iterable.class)
+                return "varArg";
+            if (type == Stream.class)
+                return "varArgStream";
+            return "arg";
+        }
+
+        private static Class<?> argFilterType(Class<?> type) {
+            if (type.isPrimitive() || type == int[].class || type == long[].class || type == double[].class || type == boolean[].class)
+                return type;
+            return Object.class;
+        }
+
+        private static Object param(String name, BindFrame frame) {
+            return frame.context.param(name);
+        }
+
+        private static Object attrib(String name, BindFrame frame) {
+            return frame.context.attrib(name);
+        }
+
+        private static Object arg(String name, BindFrame frame) {
+            return frame.context.arg(name);
+        }
+
+        private static Object varArg(String name, BindFrame frame) {
+            return frame.context.varArg(name);
+        }
+
+        private static Object varArgStream(String name, BindFrame frame) {
+            return frame.context.varArgStream(name);
+        }
+
+        private static int argInt(String name, BindFrame frame) {
+            return frame.context.argInt(name);
+        }
+
+        private static long argLong(String name, BindFrame frame) {
+            return frame.context.argLong(name);
+        }
+
+        private static double argDouble(String name, BindFrame frame) {
+            return frame.context.argDouble(name);
+        }
+
+        private static boolean argBoolean(String name, BindFrame frame) {
+            return frame.context.argBoolean(name);
+        }
+
+        private static int[] varArgInts(String name, BindFrame frame) {
+            return frame.context.varArgInts(name);
+        }
+
+        private static long[] varArgLongs(String name, BindFrame frame) {
+            return frame.context.varArgLongs(name);
+        }
+
+        private static double[] varArgDoubles(String name, BindFrame frame) {
+            return frame.context.varArgDoubles(name);
+        }
+
+        private static boolean[] varArgBooleans(String name, BindFrame frame) {
+            return frame.context.varArgBooleans(name);
+        }
+
+        private static Object autoInject(CLI cli, Class<?> type, BindFrame frame) {
+            for (AutoInjector autoInjector : cli.getAutoInjectors()) {
+                Object value = autoInjector.getValue(frame.context, frame.extraArgs, type);
+                if (value != null)
+                    return value;
             }
+            return null;
+        }
+
+        public void invoke(CommandContext context, Map<String, Object> extraArgs) {
             try {
-                method.invoke(controller, args);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                throw new RuntimeException(e.getCause());
+                handle.invokeExact(new BindFrame(context, extraArgs));
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
             }
         }
 
     }
 
+    private static class Origin {
+
+        final String controllerClass;
+        final CommandIndex.CommandMethod method;
+        final List<String> middlewares;
+
+        private Origin(String controllerClass, CommandIndex.CommandMethod method, List<String> middlewares) {
+            this.controllerClass = controllerClass;
+            this.method = method;
+            this.middlewares = middlewares;
+        }
+
+    }
+
+    private static class BindFrame {
+
+        final CommandContext context;
+        final Map<String, Object> extraArgs;
+
+        private BindFrame(CommandContext context, Map<String, Object> extraArgs) {
+            this.context = context;
+            this.extraArgs = extraArgs;
+        }
+
+    }
+
     private static class BindHandler implements CommandHandler {
         private final BindMapper handler;
 
@@ -176,4 +561,43 @@ public class CommandRouteBinder {
         }
     }
 
+    private static class LazyBindHandler implements CommandHandler {
+        private final Lazy<BindMapper> handler;
+
+        public LazyBindHandler(CLI cli, Lazy<Object> controller, Supplier<Method> method) {
+            handler = new Lazy<>(() -> new BindMapper(cli, controller.get(), method.get()));
+        }
+
+        public void handle(CommandContext context) {
+            handler.get().invoke(context, new HashMap<>());
+        }
+    }
+
+    /**
+     * Creates the value on first access exactly once. If the supplier fails, the next access tries again.
+     */
+    private static class Lazy<T> implements Supplier<T> {
+        private final Supplier<T> supplier;
+        private volatile T value;
+
+        public Lazy(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        public T get() {
+            T value = this.value;
+            if (value != null)
+                return value;
+            synchronized (this) {
+                if (this.value == null) {
+                    T created = supplier.get();
+                    if (created == null)
+                        throw new IllegalStateException("Lazy controller initialization returned null");
+                    this.value = created;
+                }
+                return this.value;
+            }
+        }
+    }
+
 }
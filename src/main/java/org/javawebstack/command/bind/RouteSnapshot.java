@@ -0,0 +1,257 @@
+package org.javawebstack.command.bind;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Compact binary snapshot of the routes of bound controllers. It contains the structure of the routes with the names
+ * of their resolvers and middlewares and the controller methods of their handlers, so the routes can be restored
+ * without scanning, reflection and declaration parsing. Snapshots of a different classpath are ignored when loading.
+ */
+public class RouteSnapshot {
+
+    private static final int MAGIC = 0x4A575352;
+    private static final int VERSION = 1;
+    private static final byte REQUIRED = 1;
+    private static final byte VARIADIC = 2;
+    private static final byte STREAMING = 4;
+    private static final byte PREVALIDATED = 8;
+
+    final List<Route> routes;
+
+    RouteSnapshot(List<Route> routes) {
+        this.routes = routes;
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    /**
+     * Writes the snapshot with the current classpath fingerprint, the file is replaced atomically
+     */
+    public void write(Path file) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(routes.size());
+        for(Route route : routes) {
+            writeString(out, strings, route.controllerClass);
+            writeString(out, strings, route.declaringClass);
+            writeString(out, strings, route.methodName);
+            writeStrings(out, strings, route.parameterTypes);
+            writeStrings(out, strings, route.middlewares);
+            writeStrings(out, strings, route.segments);
+            writeStrings(out, strings, route.segmentResolvers);
+            writeStrings(out, strings, route.arguments);
+            writeStrings(out, strings, route.argumentResolvers);
+            out.write(route.argumentFlags);
+            writeStrings(out, strings, route.options);
+            out.write(route.optionFlags);
+            for(int i=0; i<route.options.length; i++) {
+                writeStrings(out, strings, route.optionParameters[i]);
+                writeStrings(out, strings, route.optionResolvers[i]);
+            }
+        }
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream fileOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                fileOut.writeInt(MAGIC);
+                fileOut.writeInt(VERSION);
+                fileOut.writeLong(classpathFingerprint());
+                fileOut.writeInt(strings.size());
+                for(String s : strings.keySet()) {
+                    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                    fileOut.writeInt(bytes.length);
+                    fileOut.write(bytes);
+                }
+                body.writeTo(fileOut);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Maps the file into memory and reads the snapshot
+     * @return the snapshot or null if there is none, it's damaged or it has been written for a different classpath
+     */
+    public static RouteSnapshot read(Path file) throws IOException {
+        if(!Files.isRegularFile(file))
+            return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != classpathFingerprint())
+                return null;
+            String[] strings = new String[checkLength(buffer, buffer.getInt())];
+            for(int i=0; i<strings.length; i++) {
+                byte[] bytes = new byte[checkLength(buffer, buffer.getInt())];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int count = checkLength(buffer, buffer.getInt());
+            List<Route> routes = new ArrayList<>(count);
+            for(int r=0; r<count; r++) {
+                Route route = new Route();
+                route.controllerClass = readString(buffer, strings);
+                route.declaringClass = readString(buffer, strings);
+                route.methodName = readString(buffer, strings);
+                route.parameterTypes = readStrings(buffer, strings);
+                route.middlewares = readStrings(buffer, strings);
+                route.segments = readStrings(buffer, strings);
+                route.segmentResolvers = readStrings(buffer, strings);
+                route.arguments = readStrings(buffer, strings);
+                route.argumentResolvers = readStrings(buffer, strings);
+                route.argumentFlags = readBytes(buffer, route.arguments.length);
+                route.options = readStrings(buffer, strings);
+                route.optionFlags = readBytes(buffer, route.options.length);
+                route.optionParameters = new String[route.options.length][];
+                route.optionResolvers = new String[route.options.length][];
+                for(int i=0; i<route.options.length; i++) {
+                    route.optionParameters[i] = readStrings(buffer, strings);
+                    route.optionResolvers[i] = readStrings(buffer, strings);
+                }
+                routes.add(route);
+            }
+            return new RouteSnapshot(routes);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Every element takes at least one byte, so damaged lengths are detected before allocating for them
+     */
+    private static int checkLength(ByteBuffer buffer, int length) {
+        if(length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+        return length;
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String s) throws IOException {
+        out.writeInt(s == null ? -1 : strings.computeIfAbsent(s, k -> strings.size()));
+    }
+
+    private static void writeStrings(DataOutputStream out, Map<String, Integer> strings, String[] values) throws IOException {
+        out.writeShort(values.length);
+        for(String s : values)
+            writeString(out, strings, s);
+    }
+
+    private static String readString(ByteBuffer buffer, String[] strings) {
+        int index = buffer.getInt();
+        return index == -1 ? null : strings[index];
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, String[] strings) {
+        String[] values = new String[buffer.getShort() & 0xFFFF];
+        for(int i=0; i<values.length; i++)
+            values[i] = readString(buffer, strings);
+        return values;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Hashes the path, size and modification time of every classpath entry and of every file in classpath directories
+     */
+    public static long classpathFingerprint() throws IOException {
+        long hash = 0xcbf29ce484222325L;
+        for(String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if(entry.isEmpty())
+                continue;
+            Path path = Paths.get(entry).toAbsolutePath();
+            hash = fnv(hash, path.toString());
+            if(Files.isDirectory(path)) {
+                long[] files = new long[1];
+                Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        // Summed up, so the order of the walk doesn't matter
+                        files[0] += fnv(fnv(fnv(0xcbf29ce484222325L, path.relativize(file).toString()), attributes.size()), attributes.lastModifiedTime().toMillis());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                hash = fnv(hash, files[0]);
+            } else if(Files.exists(path)) {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                hash = fnv(fnv(hash, attributes.size()), attributes.lastModifiedTime().toMillis());
+            }
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, String s) {
+        for(int i=0; i<s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, long value) {
+        for(int i=0; i<8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * A route in the snapshot. Resolvers are names registered in the CLI, "" for the identity resolver of dynamic
+     * segments and null for segments that aren't dynamic or values that aren't resolved.
+     */
+    static class Route {
+
+        String controllerClass;
+        String declaringClass;
+        String methodName;
+        String[] parameterTypes;
+        String[] middlewares;
+        String[] segments;
+        String[] segmentResolvers;
+        String[] arguments;
+        String[] argumentResolvers;
+        byte[] argumentFlags;
+        String[] options;
+        byte[] optionFlags;
+        String[][] optionParameters;
+        String[][] optionResolvers;
+
+        static byte flags(boolean required, boolean variadic, boolean streaming, boolean prevalidated) {
+            return (byte) ((required ? REQUIRED : 0) | (variadic ? VARIADIC : 0) | (streaming ? STREAMING : 0) | (prevalidated ? PREVALIDATED : 0));
+        }
+
+        static boolean isRequired(byte flags) {
+            return (flags & REQUIRED) != 0;
+        }
+
+        static boolean isVariadic(byte flags) {
+            return (flags & VARIADIC) != 0;
+        }
+
+        static boolean isStreaming(byte flags) {
+            return (flags & STREAMING) != 0;
+        }
+
+        static boolean isPrevalidated(byte flags) {
+            return (flags & PREVALIDATED) != 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.javawebstack.command.handler;
+
+import org.javawebstack.command.CommandContext;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Handler that doesn't block the calling thread while waiting for I/O.
+ * A CommandExitException can be thrown directly or be used to complete the returned future exceptionally.
+ */
+public interface AsyncCommandHandler extends CommandHandler {
+
+    CompletableFuture<Void> handleAsync(CommandContext context);
+
+    default void handle(CommandContext context) {
+        try {
+            handleAsync(context).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new CompletionException(ex.getCause());
+        }
+    }
+
+}
@@ -4,11 +4,34 @@ import org.javawebstack.command.CLI;
 import org.javawebstack.command.io.Input;
 import org.javawebstack.command.io.Output;
 
+import java.util.Collections;
+import java.util.List;
+
 public class DefaultCommandNotFoundHandler implements CommandNotFoundHandler {
 
+    private int suggestions = 3;
+
+    /**
+     * Sets the maximum number of similar commands that are suggested, 0 disables suggestions
+     */
+    public DefaultCommandNotFoundHandler suggestions(int suggestions) {
+        this.suggestions = suggestions;
+        return this;
+    }
+
     public void handleNotFound(CLI cli, String[] args, Input input, Output output) {
-        if(output != null)
+        if(output == null)
+            return;
+        List<String> similar = suggestions > 0 ? cli.suggest(args, suggestions) : Collections.emptyList();
+        if(similar.isEmpty()) {
             output.error("Command not found!");
+            return;
+        }
+        // A single error, so the suggestions end up on the same stream and aren't torn apart by concurrent output
+        StringBuilder sb = new StringBuilder("Command not found!\nDid you mean:");
+        for(String command : similar)
+            sb.append("\n    ").append(command);
+        output.error(sb.toString());
     }
 
 }
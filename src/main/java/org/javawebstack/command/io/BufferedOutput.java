@@ -0,0 +1,238 @@
+package org.javawebstack.command.io;
+
+import java.io.*;
+
+/**
+ * Output that encodes text as UTF-8 straight into a reusable buffer. The buffer is written to the underlying stream
+ * when it's full, when flush is called and after every command executed by the CLI.
+ * Errors are written to the error stream right away after flushing the buffered output to keep the order.
+ */
+public class BufferedOutput implements Output {
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private static final byte[] WARN_PREFIX = "[WARN] ".getBytes();
+    private static final byte[] ERROR_PREFIX = "[ERROR] ".getBytes();
+
+    private final OutputStream out;
+    private final OutputStream err;
+    private final byte[] buffer;
+    private int position;
+    /**
+     * Pending high surrogate of a char written through the writer
+     */
+    private char highSurrogate;
+    private OutputStream stream;
+    private PrintWriter writer;
+
+    public BufferedOutput() {
+        this(System.out, System.err);
+    }
+
+    public BufferedOutput(OutputStream out, OutputStream err) {
+        this(out, err, 8192);
+    }
+
+    public BufferedOutput(OutputStream out, OutputStream err, int bufferSize) {
+        if(bufferSize < 4)
+            throw new IllegalArgumentException("The buffer size must be at least 4 bytes");
+        this.out = out;
+        this.err = err;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public synchronized void print(String text) {
+        writeChars(text);
+        writeBytes(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+    }
+
+    public synchronized void warn(String warning) {
+        writeBytes(WARN_PREFIX, 0, WARN_PREFIX.length);
+        print(warning);
+    }
+
+    public synchronized void error(String error) {
+        flush();
+        try {
+            err.write(ERROR_PREFIX);
+            err.write(error.getBytes("UTF-8"));
+            err.write(LINE_SEPARATOR);
+            err.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public synchronized void write(String data) {
+        writeChars(data);
+    }
+
+    public synchronized void write(byte[] data, int offset, int length) {
+        writeBytes(data, offset, length);
+    }
+
+    /**
+     * Writes the buffer to the stream. A high surrogate that is still waiting for its low surrogate is written as '?',
+     * so surrogate pairs must not be split across flushes.
+     */
+    public synchronized void flush() {
+        endSurrogate();
+        drain();
+    }
+
+    /**
+     * Writes the buffer to the stream without touching a pending high surrogate, used when the buffer is full
+     */
+    private void drain() {
+        if(position == 0)
+            return;
+        try {
+            out.write(buffer, 0, position);
+            out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        position = 0;
+    }
+
+    public synchronized OutputStream stream() {
+        if(stream == null) {
+            stream = new OutputStream() {
+                public void write(int b) {
+                    writeByte(b);
+                }
+                public void write(byte[] b, int off, int len) {
+                    writeBytes(b, off, len);
+                }
+                public void flush() {
+                    BufferedOutput.this.flush();
+                }
+            };
+        }
+        return stream;
+    }
+
+    public synchronized PrintWriter writer() {
+        if(writer == null) {
+            writer = new PrintWriter(new Writer() {
+                public void write(char[] cbuf, int off, int len) {
+                    writeChars(cbuf, off, len);
+                }
+                public void write(String str, int off, int len) {
+                    synchronized (BufferedOutput.this) {
+                        for(int i=off; i<off+len; i++)
+                            writeChar(str.charAt(i));
+                    }
+                }
+                public void flush() {
+                    BufferedOutput.this.flush();
+                }
+                public void close() {
+                    flush();
+                }
+            });
+        }
+        return writer;
+    }
+
+    private synchronized void writeByte(int b) {
+        endSurrogate();
+        if(position == buffer.length)
+            drain();
+        buffer[position++] = (byte) b;
+    }
+
+    private synchronized void writeBytes(byte[] data, int offset, int length) {
+        endSurrogate();
+        if(length > buffer.length) {
+            drain();
+            try {
+                out.write(data, offset, length);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return;
+        }
+        if(length > buffer.length - position)
+            drain();
+        System.arraycopy(data, offset, buffer, position, length);
+        position += length;
+    }
+
+    private synchronized void writeChars(char[] chars, int offset, int length) {
+        for(int i=offset; i<offset+length; i++)
+            writeChar(chars[i]);
+    }
+
+    private void writeChars(String s) {
+        int length = s.length();
+        int i = 0;
+        while (i < length) {
+            if(highSurrogate == 0) {
+                // Copies runs of ASCII chars without going through the encoder
+                int end = Math.min(length, i + buffer.length - position);
+                while (i < end) {
+                    char c = s.charAt(i);
+                    if(c >= 0x80)
+                        break;
+                    buffer[position++] = (byte) c;
+                    i++;
+                }
+                if(i == length)
+                    return;
+                if(i == end) {
+                    drain();
+                    continue;
+                }
+            }
+            writeChar(s.charAt(i++));
+        }
+    }
+
+    /**
+     * Writes a pending high surrogate that won't get its low surrogate anymore as '?', like a lone low surrogate
+     */
+    private void endSurrogate() {
+        if(highSurrogate == 0)
+            return;
+        highSurrogate = 0;
+        if(position == buffer.length)
+            drain();
+        buffer[position++] = '?';
+    }
+
+    private void writeChar(char c) {
+        // Every code point needs at most 4 bytes
+        if(buffer.length - position < 4)
+            drain();
+        if(highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if(Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                buffer[position++] = (byte) (0xF0 | (cp >> 18));
+                buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+                return;
+            }
+            buffer[position++] = '?';
+            writeChar(c);
+            return;
+        }
+        if(c < 0x80) {
+            buffer[position++] = (byte) c;
+        } else if(c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        } else if(Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if(Character.isLowSurrogate(c)) {
+            buffer[position++] = '?';
+        } else {
+            buffer[position++] = (byte) (0xE0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+}
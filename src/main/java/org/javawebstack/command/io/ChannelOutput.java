@@ -0,0 +1,131 @@
+package org.javawebstack.command.io;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output that writes straight to channels without going through a PrintStream.
+ * Transfers from a FileChannel use FileChannel.transferTo, so the kernel can move the data directly when the sink
+ * is a file, pipe or socket.
+ */
+public class ChannelOutput implements Output {
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final WritableByteChannel out;
+    private final WritableByteChannel err;
+
+    /**
+     * Writes to the stdout and stderr file descriptors directly, System.out and System.err should be flushed
+     * before using it alongside them.
+     */
+    public ChannelOutput() {
+        this(new FileOutputStream(FileDescriptor.out).getChannel(), new FileOutputStream(FileDescriptor.err).getChannel());
+    }
+
+    public ChannelOutput(WritableByteChannel out, WritableByteChannel err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public void print(String text) {
+        writeLine(out, text);
+    }
+
+    public void warn(String warning) {
+        writeLine(out, "[WARN] " + warning);
+    }
+
+    public void error(String error) {
+        writeLine(err, "[ERROR] " + error);
+    }
+
+    public void write(byte[] data, int offset, int length) {
+        write(ByteBuffer.wrap(data, offset, length));
+    }
+
+    public synchronized void write(ByteBuffer buffer) {
+        writeFully(out, buffer);
+    }
+
+    public synchronized long transferFrom(FileChannel channel, long position, long count) {
+        long transferred = 0;
+        try {
+            while (transferred < count) {
+                long n = channel.transferTo(position + transferred, count - transferred, out);
+                if(n <= 0) {
+                    if(position + transferred >= channel.size())
+                        break;
+                    // The target doesn't take data right now (e.g. a full non-blocking channel), copying waits for it
+                    return transferred + copy(channel, position + transferred, count - transferred);
+                }
+                transferred += n;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return transferred;
+    }
+
+    private long copy(FileChannel channel, long position, long count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, 65536));
+        long copied = 0;
+        while (copied < count) {
+            buffer.clear();
+            if(count - copied < buffer.capacity())
+                buffer.limit((int) (count - copied));
+            int n = channel.read(buffer, position + copied);
+            if(n < 0)
+                break;
+            buffer.flip();
+            writeFully(out, buffer);
+            copied += n;
+        }
+        return copied;
+    }
+
+    public WritableByteChannel channel() {
+        return out;
+    }
+
+    private synchronized void writeLine(WritableByteChannel channel, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + LINE_SEPARATOR.length);
+        buffer.put(bytes).put(LINE_SEPARATOR).flip();
+        writeFully(channel, buffer);
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) {
+                if(channel.write(buffer) == 0)
+                    awaitWritable(channel);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Blocks until a non-blocking channel can take more data instead of retrying the write in a busy loop
+     */
+    private static void awaitWritable(WritableByteChannel channel) throws IOException {
+        if(!(channel instanceof SelectableChannel) || ((SelectableChannel) channel).isBlocking()) {
+            Thread.yield();
+            return;
+        }
+        try (Selector selector = Selector.open()) {
+            ((SelectableChannel) channel).register(selector, SelectionKey.OP_WRITE);
+            selector.select();
+        }
+        if(Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException("Interrupted while waiting for the output");
+    }
+
+}
@@ -1,10 +1,54 @@
 package org.javawebstack.command.io;
 
-import java.io.InputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Input that reads lines and bytes through one shared buffer, so both can be mixed freely.
+ * When it's created for a regular file the file is memory mapped in windows instead of being copied into the heap.
+ */
 public class DefaultInput implements Input {
 
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAP_WINDOW = 64 * 1024 * 1024;
+    private static final ExecutorService READER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "input-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile DefaultInput stdin;
+
     private final InputStream inputStream;
+    private final FileChannel channel;
+    /**
+     * Unread data in read mode, either a heap buffer filled from the stream or a mapped window of the file
+     */
+    private ByteBuffer buffer;
+    /**
+     * File position of the start of the current window
+     */
+    private long mapPosition;
+    private byte[] lineBytes;
+    /**
+     * Whether the last fill of a stream has reached the end, so readLine with a timeout can return the rest without reading again
+     */
+    private boolean ended;
+    /**
+     * Guards the buffer, it's held while a reading thread is blocked on the stream
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Read that has been started by readLine with a timeout and is still waiting for data, guarded by pendingLock
+     * as the reading thread holds the lock of the input while it's blocked
+     */
+    private Future<?> pending;
+    private final Object pendingLock = new Object();
 
     public DefaultInput() {
         this(System.in);
@@ -12,6 +56,308 @@ public class DefaultInput implements Input {
 
     public DefaultInput(InputStream inputStream) {
         this.inputStream = inputStream;
+        this.channel = null;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.flip();
+    }
+
+    /**
+     * Maps the channel from its current position if it's a regular file, other channels are read like streams
+     */
+    public DefaultInput(FileChannel channel) {
+        long position = -1;
+        try {
+            if(channel.size() > 0)
+                position = channel.position();
+        } catch (IOException ignored) {
+            // Not seekable, e.g. a pipe
+        }
+        if(position >= 0) {
+            this.inputStream = null;
+            this.channel = channel;
+            this.mapPosition = position;
+            this.buffer = ByteBuffer.allocate(0);
+        } else {
+            this.inputStream = Channels.newInputStream(channel);
+            this.channel = null;
+            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            this.buffer.flip();
+        }
+    }
+
+    /**
+     * Returns the input for the stdin of the process, it's shared so data that has been read ahead isn't lost between
+     * commands. When stdin is a regular file, e.g. redirected with '&lt;', it's memory mapped, otherwise System.in is used.
+     */
+    public static DefaultInput stdin() {
+        DefaultInput input = stdin;
+        if(input == null) {
+            synchronized (DefaultInput.class) {
+                if(stdin == null)
+                    stdin = openStdin();
+                input = stdin;
+            }
+        }
+        return input;
+    }
+
+    private static DefaultInput openStdin() {
+        FileChannel channel = new FileInputStream(FileDescriptor.in).getChannel();
+        try {
+            if(channel.size() > 0 && channel.position() >= 0)
+                return new DefaultInput(channel);
+        } catch (IOException ignored) {
+            // Not seekable, e.g. a pipe or terminal
+        }
+        return new DefaultInput(System.in);
+    }
+
+    public String readLine() {
+        awaitPending();
+        lock.lock();
+        try {
+            String line = nextLine();
+            advance();
+            return line;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String nextLine() {
+        int scanned = 0;
+        while (true) {
+            int end = indexOfNewline(scanned);
+            if(end >= 0)
+                return takeLine(end, 1);
+            scanned = buffer.remaining();
+            if(!fill())
+                return buffer.hasRemaining() ? takeLine(buffer.remaining(), 0) : null;
+        }
+    }
+
+    /**
+     * Waits at most the timeout for a line, also while another thread is blocked reading. A line that arrives too late
+     * stays buffered for the next read.
+     */
+    public String readLine(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            while (true) {
+                Future<?> future;
+                synchronized (pendingLock) {
+                    future = pending;
+                }
+                if(future == null) {
+                    if(!lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                        return null;
+                    try {
+                        // Neither blocks, a mapped file doesn't wait for data and the line is already buffered otherwise
+                        if(channel != null || indexOfNewline(0) >= 0) {
+                            String line = nextLine();
+                            advance();
+                            return line;
+                        }
+                        if(ended) {
+                            ended = false;
+                            return buffer.hasRemaining() ? takeLine(buffer.remaining(), 0) : null;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    synchronized (pendingLock) {
+                        if(pending == null)
+                            pending = READER.submit(this::fillLine);
+                        future = pending;
+                    }
+                }
+                try {
+                    future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException ex) {
+                    clearPending(future);
+                    throw unwrap(ex);
+                }
+                // The line might have been taken by another thread in the meantime, then the next one is awaited
+                clearPending(future);
+            }
+        } catch (TimeoutException ex) {
+            return null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    public int read(ByteBuffer target) {
+        awaitPending();
+        lock.lock();
+        try {
+            if(!target.hasRemaining())
+                return 0;
+            if(!buffer.hasRemaining()) {
+                if(channel == null && target.remaining() >= BUFFER_SIZE && target.hasArray())
+                    return readDirect(target);
+                if(!fill())
+                    return -1;
+            }
+            int length = Math.min(buffer.remaining(), target.remaining());
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + length);
+            target.put(slice);
+            buffer.position(buffer.position() + length);
+            advance();
+            return length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the position of a mapped channel behind the consumed data, mapping doesn't change it. Otherwise other readers
+     * of the file descriptor would read the same data again.
+     */
+    private void advance() {
+        if(channel == null)
+            return;
+        try {
+            channel.position(mapPosition + buffer.position());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void fillLine() {
+        lock.lock();
+        try {
+            int scanned = 0;
+            while (indexOfNewline(scanned) < 0) {
+                scanned = buffer.remaining();
+                if(!fill())
+                    return;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the offset of the next '\n' relative to the buffer position or -1
+     */
+    private int indexOfNewline(int from) {
+        int limit = buffer.limit();
+        for(int i = buffer.position() + from; i < limit; i++) {
+            if(buffer.get(i) == '\n')
+                return i - buffer.position();
+        }
+        return -1;
+    }
+
+    private String takeLine(int length, int terminator) {
+        int start = buffer.position();
+        int textLength = length > 0 && buffer.get(start + length - 1) == '\r' ? length - 1 : length;
+        String line;
+        if(buffer.hasArray()) {
+            line = new String(buffer.array(), buffer.arrayOffset() + start, textLength, StandardCharsets.UTF_8);
+        } else {
+            if(lineBytes == null || lineBytes.length < textLength)
+                lineBytes = new byte[Math.max(textLength, 256)];
+            buffer.duplicate().get(lineBytes, 0, textLength);
+            line = new String(lineBytes, 0, textLength, StandardCharsets.UTF_8);
+        }
+        buffer.position(start + length + terminator);
+        return line;
+    }
+
+    /**
+     * Adds data behind the unread bytes of the buffer, growing it when it's full
+     * @return false if the end of the input has been reached
+     */
+    private boolean fill() {
+        try {
+            if(channel != null)
+                return mapNext();
+            buffer.compact();
+            if(!buffer.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            int n = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if(n > 0)
+                buffer.position(buffer.position() + n);
+            buffer.flip();
+            ended = n < 0;
+            return n >= 0;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private boolean mapNext() throws IOException {
+        long position = mapPosition + buffer.position();
+        long available = channel.size() - position;
+        if(available <= buffer.remaining())
+            return false;
+        long size = Math.min(available, Math.max(MAP_WINDOW, (long) buffer.remaining() * 2));
+        if(size > Integer.MAX_VALUE)
+            size = Integer.MAX_VALUE;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        mapPosition = position;
+        return true;
+    }
+
+    private int readDirect(ByteBuffer target) {
+        try {
+            int n = inputStream.read(target.array(), target.arrayOffset() + target.position(), target.remaining());
+            if(n > 0)
+                target.position(target.position() + n);
+            return n;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void awaitPending() {
+        Future<?> future;
+        synchronized (pendingLock) {
+            future = pending;
+        }
+        if(future == null)
+            return;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    throw unwrap(ex);
+                }
+            }
+        } finally {
+            clearPending(future);
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private void clearPending(Future<?> future) {
+        synchronized (pendingLock) {
+            if(pending == future)
+                pending = null;
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if(cause instanceof RuntimeException)
+            return (RuntimeException) cause;
+        if(cause instanceof Error)
+            throw (Error) cause;
+        return new IllegalStateException(cause);
     }
 
 }
@@ -35,4 +35,10 @@ public class DefaultOutput implements Output {
         out.write(data, offset, length);
     }
 
+    @Override
+    public void flush() {
+        out.flush();
+        err.flush();
+    }
+
 }
@@ -1,4 +1,62 @@
 package org.javawebstack.command.io;
 
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 public interface Input {
+
+    /**
+     * Reads the next line of the input. Inputs that don't provide lines behave like an empty input.
+     * @return the line without the line terminator or null if the end of the input has been reached
+     */
+    default String readLine() {
+        return null;
+    }
+
+    /**
+     * Reads the next line of the input, waiting at most the given time for it to become available.
+     * Data that arrives after the timeout is not lost, it's returned by the next read.
+     * Inputs that can't wait with a timeout block like readLine().
+     * @return the line without the line terminator or null if the end of the input has been reached or the timeout elapsed
+     */
+    default String readLine(long timeout, TimeUnit unit) {
+        return readLine();
+    }
+
+    /**
+     * Reads the next bytes of the input into the buffer. Inputs that don't provide bytes behave like an empty input.
+     * @return the number of bytes read or -1 if the end of the input has been reached
+     */
+    default int read(ByteBuffer buffer) {
+        return -1;
+    }
+
+    /**
+     * @return a lazy stream of the remaining lines, reading happens while the stream is consumed
+     */
+    default Stream<String> lines() {
+        Iterator<String> iterator = new Iterator<String>() {
+            private String next;
+            public boolean hasNext() {
+                if(next == null)
+                    next = readLine();
+                return next != null;
+            }
+            public String next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                String line = next;
+                next = null;
+                return line;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
 }
@@ -1,6 +1,8 @@
 package org.javawebstack.command.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 
 public interface Output {
@@ -27,6 +29,55 @@ public interface Output {
 
     void write(byte[] data, int offset, int length);
 
+    /**
+     * Writes the remaining bytes of the buffer, direct buffers are copied in chunks
+     */
+    default void write(ByteBuffer buffer) {
+        if(buffer.hasArray()) {
+            write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Writes count bytes of the channel starting at position, stops early at the end of the channel
+     * @return the number of bytes that have been written
+     */
+    default long transferFrom(FileChannel channel, long position, long count) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(Math.min(count, 65536), 1));
+        long transferred = 0;
+        try {
+            while (transferred < count) {
+                buffer.clear();
+                if(count - transferred < buffer.capacity())
+                    buffer.limit((int) (count - transferred));
+                int n = channel.read(buffer, position + transferred);
+                if(n < 0)
+                    break;
+                buffer.flip();
+                write(buffer);
+                transferred += n;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return transferred;
+    }
+
+    /**
+     * Writes buffered data to the underlying streams, called by the CLI after every command
+     */
+    default void flush() {
+
+    }
+
     default PrintWriter writer() {
         return new PrintWriter(stream());
     }
@@ -34,8 +85,10 @@ public interface Output {
     default OutputStream stream() {
         Output that = this;
         return new OutputStream() {
+            private final byte[] single = new byte[1];
             public void write(int b) throws IOException {
-                that.write(new byte[] { (byte) b });
+                single[0] = (byte) b;
+                that.write(single);
             }
             public void write(byte[] b) throws IOException {
                 that.write(b);
@@ -43,6 +96,9 @@ public interface Output {
             public void write(byte[] b, int off, int len) throws IOException {
                 that.write(b, off, len);
             }
+            public void flush() {
+                that.flush();
+            }
         };
     }
 
@@ -0,0 +1,78 @@
+package org.javawebstack.command.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Output that keeps everything in memory so it can be replayed to another output later on
+ */
+public class RecordingOutput implements Output {
+
+    private static final int PRINT = 0;
+    private static final int WARN = 1;
+    private static final int ERROR = 2;
+    private static final int WRITE = 3;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public synchronized void print(String text) {
+        add(PRINT, text);
+    }
+
+    public synchronized void warn(String warning) {
+        add(WARN, warning);
+    }
+
+    public synchronized void error(String error) {
+        add(ERROR, error);
+    }
+
+    public synchronized void write(byte[] data, int offset, int length) {
+        add(WRITE, Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    private void add(int type, Object value) {
+        entries.add(new Entry(type, value));
+    }
+
+    public synchronized void replay(Output output) {
+        for(Entry entry : entries) {
+            switch (entry.type) {
+                case PRINT:
+                    output.print((String) entry.value);
+                    break;
+                case WARN:
+                    output.warn((String) entry.value);
+                    break;
+                case ERROR:
+                    output.error((String) entry.value);
+                    break;
+                case WRITE:
+                    output.write((byte[]) entry.value);
+                    break;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    private static class Entry {
+
+        final int type;
+        final Object value;
+
+        private Entry(int type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,271 @@
+package org.javawebstack.command.metrics;
+
+import org.javawebstack.command.router.CommandRoute;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Registry of the execution metrics of a CLI, see CLI.metrics.
+ * When metrics are disabled the CLI doesn't hold a registry at all, so the only cost is a null check per execution.
+ */
+public class CommandMetrics implements CommandMetricsMXBean {
+
+    public static final String DEFAULT_OBJECT_NAME = "org.javawebstack.command:type=CommandMetrics";
+
+    private static final String PREFIX = "javawebstack_command_";
+
+    private final Map<CommandRoute, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final LongAdder notFound = new LongAdder();
+    private final LatencyHistogram notFoundRouting = new LatencyHistogram();
+    private ObjectName objectName;
+
+    public RouteMetrics route(CommandRoute route) {
+        RouteMetrics metrics = routes.get(route);
+        if(metrics == null)
+            metrics = routes.computeIfAbsent(route, RouteMetrics::new);
+        return metrics;
+    }
+
+    /**
+     * Drops the metrics of a route, called by the CLI when the route is removed
+     */
+    public boolean remove(CommandRoute route) {
+        return routes.remove(route) != null;
+    }
+
+    public Collection<RouteMetrics> getRoutes() {
+        return routes.values();
+    }
+
+    public void recordNotFound(long routingNanos) {
+        notFound.increment();
+        notFoundRouting.record(routingNanos);
+    }
+
+    public long getExecutions() {
+        long sum = 0;
+        for(RouteMetrics metrics : routes.values())
+            sum += metrics.getMatched();
+        return sum;
+    }
+
+    public long getNotFound() {
+        return notFound.sum();
+    }
+
+    public long getValidationFailures() {
+        long sum = 0;
+        for(RouteMetrics metrics : routes.values())
+            sum += metrics.getValidationFailures();
+        return sum;
+    }
+
+    public long getExceptions() {
+        long sum = 0;
+        for(RouteMetrics metrics : routes.values())
+            sum += metrics.getExceptions();
+        return sum;
+    }
+
+    public long getExits() {
+        long sum = 0;
+        for(RouteMetrics metrics : routes.values())
+            sum += metrics.getExits(true) + metrics.getExits(false);
+        return sum;
+    }
+
+    public String[] getRouteLabels() {
+        Set<String> labels = new TreeSet<>();
+        for(RouteMetrics metrics : routes.values())
+            labels.add(metrics.getLabel());
+        return labels.toArray(new String[0]);
+    }
+
+    public void reset() {
+        notFound.reset();
+        notFoundRouting.reset();
+        for(RouteMetrics metrics : routes.values())
+            metrics.reset();
+    }
+
+    public String getPrometheusText() {
+        StringWriter writer = new StringWriter();
+        try {
+            writePrometheus(writer);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     * Routes that share a label, e.g. the same declaration on two CLIs sharing this registry, are aggregated into one series.
+     */
+    public void writePrometheus(Writer writer) throws IOException {
+        Map<String, List<RouteMetrics>> groups = new TreeMap<>();
+        for(RouteMetrics metrics : routes.values())
+            groups.computeIfAbsent(metrics.getLabel(), l -> new ArrayList<>()).add(metrics);
+        header(writer, "not_found_total", "counter", "Commands that didn't match any route");
+        writer.write(PREFIX + "not_found_total " + notFound.sum() + "\n");
+        header(writer, "matched_total", "counter", "Commands that matched a route and passed validation");
+        for(Map.Entry<String, List<RouteMetrics>> group : groups.entrySet())
+            sample(writer, "matched_total", routeLabel(group.getKey()), sum(group.getValue(), RouteMetrics::getMatched));
+        header(writer, "succeeded_total", "counter", "Commands that executed successfully");
+        for(Map.Entry<String, List<RouteMetrics>> group : groups.entrySet())
+            sample(writer, "succeeded_total", routeLabel(group.getKey()), sum(group.getValue(), RouteMetrics::getSucceeded));
+        header(writer, "validation_failed_total", "counter", "Commands that matched a route but failed validation");
+        for(Map.Entry<String, List<RouteMetrics>> group : groups.entrySet())
+            sample(writer, "validation_failed_total", routeLabel(group.getKey()), sum(group.getValue(), RouteMetrics::getValidationFailures));
+        header(writer, "exceptions_total", "counter", "Commands that ended with an unhandled exception");
+        for(Map.Entry<String, List<RouteMetrics>> group : groups.entrySet())
+            sample(writer, "exceptions_total", routeLabel(group.getKey()), sum(group.getValue(), RouteMetrics::getExceptions));
+        header(writer, "exits_total", "counter", "Commands that were ended by a CommandExitException");
+        for(Map.Entry<String, List<RouteMetrics>> group : groups.entrySet()) {
+            String label = routeLabel(group.getKey());
+            sample(writer, "exits_total", label + ",success=\"true\"", sum(group.getValue(), m -> m.getExits(true)));
+            sample(writer, "exits_total", label + ",success=\"false\"", sum(group.getValue(), m -> m.getExits(false)));
+        }
+        header(writer, "duration_seconds", "histogram", "Total duration of the command executions");
+        for(Map.Entry<String, List<RouteMetrics>> group : groups.entrySet()) {
+            List<LatencyHistogram> histograms = new ArrayList<>();
+            for(RouteMetrics metrics : group.getValue())
+                histograms.add(metrics.getDuration());
+            histogram(writer, "duration_seconds", routeLabel(group.getKey()), histograms);
+        }
+        header(writer, "phase_duration_seconds", "histogram", "Duration of the routing, validation, middleware and handler phases");
+        histogram(writer, "phase_duration_seconds", "route=\"\",phase=\"routing\",index=\"0\"", Collections.singletonList(notFoundRouting));
+        for(Map.Entry<String, List<RouteMetrics>> group : groups.entrySet()) {
+            for(Phase phase : Phase.values()) {
+                int count = 0;
+                for(RouteMetrics metrics : group.getValue())
+                    count = Math.max(count, middlewareCount(metrics, phase));
+                for(int i=0; i<count; i++) {
+                    List<LatencyHistogram> histograms = new ArrayList<>();
+                    for(RouteMetrics metrics : group.getValue()) {
+                        if(i < middlewareCount(metrics, phase))
+                            histograms.add(metrics.getPhase(phase, i));
+                    }
+                    String labels = routeLabel(group.getKey()) + ",phase=\"" + phase.name().toLowerCase(Locale.ROOT) + "\",index=\"" + i + "\"";
+                    histogram(writer, "phase_duration_seconds", labels, histograms);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the Prometheus text to the file, e.g. for the node exporter textfile collector.
+     * The file is replaced atomically where the file system supports it, so readers never see a partial file.
+     */
+    public void writePrometheus(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writePrometheus(writer);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public CommandMetrics registerMBean() {
+        return registerMBean(DEFAULT_OBJECT_NAME);
+    }
+
+    public synchronized CommandMetrics registerMBean(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(name);
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException ex) {
+            throw new IllegalStateException("Failed to register the metrics mbean '" + name + "'", ex);
+        }
+        return this;
+    }
+
+    public synchronized void unregisterMBean() {
+        if(objectName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            throw new IllegalStateException("Failed to unregister the metrics mbean '" + objectName + "'", ex);
+        }
+        objectName = null;
+    }
+
+    private static void header(Writer writer, String name, String type, String help) throws IOException {
+        writer.write("# HELP " + PREFIX + name + " " + help + "\n");
+        writer.write("# TYPE " + PREFIX + name + " " + type + "\n");
+    }
+
+    private static void sample(Writer writer, String name, String labels, long value) throws IOException {
+        writer.write(PREFIX + name + "{" + labels + "} " + value + "\n");
+    }
+
+    private static int middlewareCount(RouteMetrics metrics, Phase phase) {
+        return phase == Phase.BEFORE || phase == Phase.AFTER ? metrics.getMiddlewareCount(phase) : 1;
+    }
+
+    private static long sum(List<RouteMetrics> group, ToLongFunction<RouteMetrics> value) {
+        long sum = 0;
+        for(RouteMetrics metrics : group)
+            sum += value.applyAsLong(metrics);
+        return sum;
+    }
+
+    private static void histogram(Writer writer, String name, String labels, List<LatencyHistogram> histograms) throws IOException {
+        long[] counts = new long[LatencyHistogram.BOUNDS.length + 1];
+        long total = 0;
+        for(LatencyHistogram histogram : histograms) {
+            long[] bucketCounts = histogram.getBucketCounts();
+            for(int i=0; i<counts.length; i++)
+                counts[i] += bucketCounts[i];
+            total += histogram.getSum();
+        }
+        long cumulative = 0;
+        for(int i=0; i<counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < LatencyHistogram.BOUNDS.length ? seconds(LatencyHistogram.BOUNDS[i]) : "+Inf";
+            writer.write(PREFIX + name + "_bucket{" + labels + ",le=\"" + le + "\"} " + cumulative + "\n");
+        }
+        writer.write(PREFIX + name + "_sum{" + labels + "} " + seconds(total) + "\n");
+        writer.write(PREFIX + name + "_count{" + labels + "} " + cumulative + "\n");
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String routeLabel(String label) {
+        StringBuilder sb = new StringBuilder(label.length() + 8).append("route=\"");
+        for(int i=0; i<label.length(); i++) {
+            char c = label.charAt(i);
+            if(c == '\\' || c == '"')
+                sb.append('\\').append(c);
+            else if(c == '\n')
+                sb.append("\\n");
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+}
@@ -0,0 +1,21 @@
+package org.javawebstack.command.metrics;
+
+public interface CommandMetricsMXBean {
+
+    long getExecutions();
+
+    long getNotFound();
+
+    long getValidationFailures();
+
+    long getExceptions();
+
+    long getExits();
+
+    String[] getRouteLabels();
+
+    String getPrometheusText();
+
+    void reset();
+
+}
@@ -0,0 +1,69 @@
+package org.javawebstack.command.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed buckets from 1us to 10s. Recording is lock free and only touches two adders.
+ */
+public class LatencyHistogram {
+
+    static final long[] BOUNDS = {
+            1_000L, 5_000L, 10_000L, 50_000L, 100_000L, 500_000L,
+            1_000_000L, 5_000_000L, 10_000_000L, 50_000_000L, 100_000_000L, 500_000_000L,
+            1_000_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for(int i=0; i<buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        int i = 0;
+        while (i < BOUNDS.length && nanos > BOUNDS[i])
+            i++;
+        buckets[i].increment();
+        sum.add(nanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for(LongAdder bucket : buckets)
+            count += bucket.sum();
+        return count;
+    }
+
+    /**
+     * @return the sum of all recorded durations in nanoseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the upper bounds of the buckets in nanoseconds, the last bucket has no upper bound
+     */
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * @return the number of values per bucket, not cumulative
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for(int i=0; i<counts.length; i++)
+            counts[i] = buckets[i].sum();
+        return counts;
+    }
+
+    public void reset() {
+        for(LongAdder bucket : buckets)
+            bucket.reset();
+        sum.reset();
+    }
+
+}
@@ -0,0 +1,11 @@
+package org.javawebstack.command.metrics;
+
+public enum Phase {
+
+    ROUTING,
+    VALIDATION,
+    BEFORE,
+    HANDLER,
+    AFTER
+
+}
@@ -0,0 +1,183 @@
+package org.javawebstack.command.metrics;
+
+import org.javawebstack.command.router.CommandRoute;
+import org.javawebstack.command.router.RouteArgument;
+import org.javawebstack.command.router.RouteSegment;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class RouteMetrics implements RouteRecorder {
+
+    private static final LatencyHistogram[] NONE = new LatencyHistogram[0];
+
+    private final CommandRoute route;
+    private final String label;
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LongAdder successfulExits = new LongAdder();
+    private final LongAdder failedExits = new LongAdder();
+    private final LatencyHistogram duration = new LatencyHistogram();
+    private final LatencyHistogram routing = new LatencyHistogram();
+    private final LatencyHistogram validation = new LatencyHistogram();
+    private final LatencyHistogram handler = new LatencyHistogram();
+    private volatile LatencyHistogram[] before = NONE;
+    private volatile LatencyHistogram[] after = NONE;
+
+    public RouteMetrics(CommandRoute route) {
+        this.route = route;
+        this.label = label(route);
+    }
+
+    public void record(Phase phase, int index, long nanos) {
+        getPhase(phase, index).record(nanos);
+    }
+
+    public void exit(boolean success) {
+        (success ? successfulExits : failedExits).increment();
+    }
+
+    public void recordMatch(long routingNanos, long validationNanos) {
+        matched.increment();
+        routing.record(routingNanos);
+        validation.record(validationNanos);
+    }
+
+    public void recordValidationFailure(long routingNanos, long validationNanos) {
+        validationFailures.increment();
+        routing.record(routingNanos);
+        validation.record(validationNanos);
+    }
+
+    public void recordException() {
+        exceptions.increment();
+    }
+
+    public void recordCompletion(boolean success, long nanos) {
+        if(success)
+            succeeded.increment();
+        duration.record(nanos);
+    }
+
+    public LatencyHistogram getPhase(Phase phase, int index) {
+        switch (phase) {
+            case ROUTING:
+                return routing;
+            case VALIDATION:
+                return validation;
+            case HANDLER:
+                return handler;
+            case BEFORE:
+                return middleware(true, index);
+            default:
+                return middleware(false, index);
+        }
+    }
+
+    private LatencyHistogram middleware(boolean isBefore, int index) {
+        LatencyHistogram[] histograms = isBefore ? before : after;
+        if(index < histograms.length)
+            return histograms[index];
+        synchronized (this) {
+            histograms = isBefore ? before : after;
+            if(index >= histograms.length) {
+                LatencyHistogram[] grown = new LatencyHistogram[index + 1];
+                System.arraycopy(histograms, 0, grown, 0, histograms.length);
+                for(int i=histograms.length; i<grown.length; i++)
+                    grown[i] = new LatencyHistogram();
+                if(isBefore)
+                    before = grown;
+                else
+                    after = grown;
+                histograms = grown;
+            }
+            return histograms[index];
+        }
+    }
+
+    public int getMiddlewareCount(Phase phase) {
+        if(phase == Phase.BEFORE)
+            return before.length;
+        if(phase == Phase.AFTER)
+            return after.length;
+        return 0;
+    }
+
+    public CommandRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * @return the route in declaration syntax, e.g. "user {id} show &lt;name&gt; [rest...]"
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public long getMatched() {
+        return matched.sum();
+    }
+
+    public long getSucceeded() {
+        return succeeded.sum();
+    }
+
+    public long getValidationFailures() {
+        return validationFailures.sum();
+    }
+
+    public long getExceptions() {
+        return exceptions.sum();
+    }
+
+    public long getExits(boolean success) {
+        return (success ? successfulExits : failedExits).sum();
+    }
+
+    /**
+     * @return total duration of the executions from routing until the last handler finished
+     */
+    public LatencyHistogram getDuration() {
+        return duration;
+    }
+
+    void reset() {
+        matched.reset();
+        succeeded.reset();
+        validationFailures.reset();
+        exceptions.reset();
+        successfulExits.reset();
+        failedExits.reset();
+        duration.reset();
+        routing.reset();
+        validation.reset();
+        handler.reset();
+        for(LatencyHistogram h : before)
+            h.reset();
+        for(LatencyHistogram h : after)
+            h.reset();
+    }
+
+    private static String label(CommandRoute route) {
+        StringBuilder sb = new StringBuilder();
+        for(RouteSegment segment : route.getSegments()) {
+            if(sb.length() > 0)
+                sb.append(' ');
+            if(segment.isDynamic())
+                sb.append('{').append(segment.getName()).append('}');
+            else
+                sb.append(segment.getName());
+        }
+        for(RouteArgument argument : route.getArguments()) {
+            if(sb.length() > 0)
+                sb.append(' ');
+            sb.append(argument.isRequired() ? '<' : '[').append(argument.getName());
+            if(argument.isVarArg())
+                sb.append("...");
+            sb.append(argument.isRequired() ? '>' : ']');
+        }
+        return sb.toString();
+    }
+
+}
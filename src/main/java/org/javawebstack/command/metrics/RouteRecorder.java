@@ -0,0 +1,20 @@
+package org.javawebstack.command.metrics;
+
+/**
+ * Receives the timings of a single route execution, see CommandRoute.execute
+ */
+public interface RouteRecorder {
+
+    /**
+     * @param phase the phase that has been executed
+     * @param index index of the middleware for BEFORE and AFTER, 0 otherwise
+     * @param nanos duration of the phase
+     */
+    void record(Phase phase, int index, long nanos);
+
+    /**
+     * Called when a handler ended the execution with a CommandExitException
+     */
+    void exit(boolean success);
+
+}
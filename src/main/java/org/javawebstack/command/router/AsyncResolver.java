@@ -0,0 +1,20 @@
+package org.javawebstack.command.router;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Resolver that produces its values asynchronously, e.g. by looking them up remotely. Parallel validation waits for
+ * all pending values at once, sequential validation blocks on each of them.
+ * Invalid values are rejected by completing exceptionally or with null.
+ */
+@FunctionalInterface
+public interface AsyncResolver extends Function<String, Object> {
+
+    CompletableFuture<?> resolveAsync(String value);
+
+    default Object apply(String value) {
+        return resolveAsync(value).join();
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.javawebstack.command.router;
+
+import java.util.function.Function;
+
+/**
+ * Resolver that produces a primitive boolean, the value is kept unboxed in the CommandContext.
+ * Invalid values are rejected by throwing an exception.
+ */
+@FunctionalInterface
+public interface BooleanResolver extends Function<String, Object> {
+
+    boolean resolveBoolean(String value);
+
+    default Object apply(String value) {
+        return resolveBoolean(value);
+    }
+
+}
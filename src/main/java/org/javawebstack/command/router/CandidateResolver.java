@@ -0,0 +1,36 @@
+package org.javawebstack.command.router;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Resolver that can enumerate the values it accepts, they are offered by the shell completion
+ */
+public interface CandidateResolver extends Function<String, Object> {
+
+    /**
+     * @param prefix the part of the value that has been typed already
+     * @return the accepted values starting with the prefix
+     */
+    Collection<String> candidates(String prefix);
+
+    static CandidateResolver of(Function<String, Object> resolver, Supplier<Collection<String>> values) {
+        return new CandidateResolver() {
+            public Collection<String> candidates(String prefix) {
+                List<String> candidates = new ArrayList<>();
+                for(String value : values.get()) {
+                    if(value.regionMatches(true, 0, prefix, 0, prefix.length()))
+                        candidates.add(value);
+                }
+                return candidates;
+            }
+            public Object apply(String s) {
+                return resolver.apply(s);
+            }
+        };
+    }
+
+}
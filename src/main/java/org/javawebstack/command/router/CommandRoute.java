@@ -1,22 +1,37 @@
 package org.javawebstack.command.router;
 
 import org.javawebstack.command.CommandContext;
+import org.javawebstack.command.handler.AsyncCommandHandler;
 import org.javawebstack.command.handler.CommandExitException;
 import org.javawebstack.command.handler.CommandHandler;
+import org.javawebstack.command.metrics.Phase;
+import org.javawebstack.command.metrics.RouteRecorder;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public class CommandRoute {
 
+    /**
+     * Resolver of dynamic segments that are declared without one, it passes the raw value through
+     */
+    public static final Function<String, Object> IDENTITY_RESOLVER = s -> s;
+
     List<RouteSegment> segments = new ArrayList<>();
     List<RouteArgument> arguments = new ArrayList<>();
     List<RouteOption> options = new ArrayList<>();
     CommandHandler handler = null;
     List<CommandHandler> beforeMiddlewares = new ArrayList<>();
     List<CommandHandler> afterMiddlewares = new ArrayList<>();
+    private RouteIndex index;
 
     public CommandRoute handler(CommandHandler handler) {
         this.handler = handler;
@@ -33,15 +48,28 @@ public class CommandRoute {
         return this;
     }
 
+    public CommandRoute asyncHandler(AsyncCommandHandler handler) {
+        return handler(handler);
+    }
+
+    public CommandRoute beforeAsync(AsyncCommandHandler before) {
+        return before(before);
+    }
+
+    public CommandRoute afterAsync(AsyncCommandHandler after) {
+        return after(after);
+    }
+
     public CommandRoute segment(String name) {
         if(arguments.size() > 0)
             throw new IllegalStateException("Can not add segments after arguments");
         segments.add(new RouteSegment(name));
+        index = null;
         return this;
     }
 
     public CommandRoute dynamicSegment(String name) {
-        return dynamicSegment(name, s -> s);
+        return dynamicSegment(name, IDENTITY_RESOLVER);
     }
 
     public CommandRoute dynamicSegment(String name, Function<String, Object> resolver) {
@@ -50,6 +78,24 @@ public class CommandRoute {
         if(segments.stream().anyMatch(a -> a.isDynamic() && a.getName().equals(name)))
             throw new IllegalStateException("Dynamic segment '" + name + "' already exists");
         segments.add(new RouteSegment(name, resolver));
+        index = null;
+        return this;
+    }
+
+    /**
+     * Appends prebuilt segments, RouteSegments are immutable so they can be shared between routes
+     */
+    public CommandRoute segments(List<RouteSegment> segments) {
+        if(segments.isEmpty())
+            return this;
+        if(arguments.size() > 0)
+            throw new IllegalStateException("Can not add segments after arguments");
+        for(RouteSegment segment : segments) {
+            if(segment.isDynamic() && this.segments.stream().anyMatch(a -> a.isDynamic() && a.getName().equals(segment.getName())))
+                throw new IllegalStateException("Dynamic segment '" + segment.getName() + "' already exists");
+            this.segments.add(segment);
+        }
+        index = null;
         return this;
     }
 
@@ -68,6 +114,7 @@ public class CommandRoute {
                 throw new IllegalStateException("Can not add required argument '" + name + "' after optional argument '" + previousArgument.getName() + "'");
         }
         arguments.add(new RouteArgument(name, required, false, resolver));
+        index = null;
         return this;
     }
 
@@ -77,16 +124,39 @@ public class CommandRoute {
     }
 
     public CommandRoute varArg(String name, boolean required, Function<String, Object> resolver) {
+        return addVarArg(new RouteArgument(name, required, true, resolver));
+    }
+
+    /**
+     * Adds a vararg whose values are resolved lazily while the handler consumes them, so huge argument lists don't need
+     * to be resolved and kept in memory at once. Invalid values are reported when they are consumed.
+     * The values are available as LazyVarArg through CommandContext.varArg and varArgStream.
+     */
+    public CommandRoute streamVarArg(String name, boolean required, Function<String, Object> resolver) {
+        return streamVarArg(name, required, resolver, false);
+    }
+
+    /**
+     * @param prevalidate whether all values are resolved once during validation (without keeping them), so invalid
+     *                    values are reported before the handler runs at the cost of resolving every value twice
+     */
+    public CommandRoute streamVarArg(String name, boolean required, Function<String, Object> resolver, boolean prevalidate) {
+        return addVarArg(new RouteArgument(name, required, true, resolver, true, prevalidate));
+    }
+
+    private CommandRoute addVarArg(RouteArgument varArg) {
+        String name = varArg.getName();
         if(arguments.stream().anyMatch(a -> a.getName().equals(name)))
             throw new IllegalStateException("Argument '" + name + "' already exists");
         if(arguments.size() > 0) {
             RouteArgument previousArgument = arguments.get(arguments.size()-1);
             if(previousArgument.isVarArg())
                 throw new IllegalStateException("Can not add argument '" + name + "' after vararg '" + previousArgument.getName() + "'");
-            if(required && !previousArgument.isRequired())
+            if(varArg.isRequired() && !previousArgument.isRequired())
                 throw new IllegalStateException("Can not add required argument '" + name + "' after optional argument '" + previousArgument.getName() + "'");
         }
-        arguments.add(new RouteArgument(name, required, true, resolver));
+        arguments.add(varArg);
+        index = null;
         return this;
     }
 
@@ -117,6 +187,7 @@ public class CommandRoute {
         if(paramConfigurator != null)
             paramConfigurator.accept(option);
         options.add(option);
+        index = null;
         return this;
     }
 
@@ -150,70 +221,53 @@ public class CommandRoute {
      * @return CommandRouteMatch if matched, else null
      */
     public CommandParseResult match(String[] args) {
-        Stack<String> stack = new Stack<>();
-        for(int i=args.length-1; i>=0; i--)
-            stack.push(args[i]);
-        Map<String, Object> params = new HashMap<>();
-        Map<String, List<List<String>>> rawOptions = new HashMap<>();
-        List<String> rawArgs = new ArrayList<>();
-        int nextSegment = 0;
-
-        while (!stack.isEmpty()) {
-            String s = stack.pop();
-            if(s.length() >= 2 && s.startsWith("-") && s.charAt(1) != '-') {
-                s = s.substring(1);
-                for(int i=0; i<s.length()-1; i++) {
-                    rawOptions.computeIfAbsent(String.valueOf(s.charAt(i)), k -> new ArrayList<>()).add(new ArrayList<>());
-                }
-                s = String.valueOf(s.charAt(s.length()-1));
-                String on = s;
-                RouteOption option = options.stream().filter(o -> o.name.equals(on)).findFirst().orElse(null);
-                List<String> values = new ArrayList<>();
-                if(option != null) {
-                    for(int i=0; i<option.parameters.size() && !stack.isEmpty(); i++) {
-                        values.add(stack.pop());
+        RouteIndex index = index();
+        MatchScratch scratch = MatchScratch.acquire();
+        try {
+            int nextSegment = 0;
+            for(int t=0; t<args.length; t++) {
+                String s = args[t];
+                if(s.length() >= 2 && s.charAt(0) == '-' && s.charAt(1) != '-') {
+                    for(int i=1; i<s.length()-1; i++)
+                        scratch.option(t, i, i+1, index.shortOptions.get(s.charAt(i)), 0, false);
+                    RouteOption option = index.shortOptions.get(s.charAt(s.length()-1));
+                    int count = option != null ? Math.min(option.parameters.size(), args.length-t-1) : 0;
+                    scratch.option(t, s.length()-1, s.length(), option, count, false);
+                    t += count;
+                } else if(s.length() >= 3 && s.charAt(0) == '-' && s.charAt(1) == '-' && s.charAt(2) != '-') {
+                    int eq = s.indexOf('=', 2);
+                    if(eq != -1) {
+                        scratch.option(t, 2, eq, index.longOption(s, 2, eq), 1, true);
+                    } else {
+                        RouteOption option = index.longOption(s, 2, s.length());
+                        int count = option != null ? Math.min(option.parameters.size(), args.length-t-1) : 0;
+                        scratch.option(t, 2, s.length(), option, count, false);
+                        t += count;
                     }
-                }
-                rawOptions.computeIfAbsent(s.toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(values);
-            } else if(s.length() >= 3 && s.startsWith("--") && s.charAt(2) != '-') {
-                s = s.substring(2);
-                if(s.contains("=")) {
-                    String[] spl = s.split("=", 2);
-                    List<String> values = new ArrayList<>();
-                    values.add(spl.length == 2 ? spl[1] : "");
-                    rawOptions.computeIfAbsent(spl[0].toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(values);
                 } else {
-                    String on = s.toLowerCase(Locale.ROOT);
-                    RouteOption option = options.stream().filter(o -> o.name.equalsIgnoreCase(on)).findFirst().orElse(null);
-                    List<String> values = new ArrayList<>();
-                    if(option != null) {
-                        for(int i=0; i<option.parameters.size() && !stack.isEmpty(); i++) {
-                            values.add(stack.pop());
+                    if(nextSegment < segments.size()) {
+                        RouteSegment segment = segments.get(nextSegment);
+                        if(segment.isDynamic()) {
+                            Object res = safeApply(segment.getResolver(), s);
+                            if(res == null)
+                                return null;
+                            scratch.param(segment.getName(), res);
+                        } else {
+                            if(!segment.getName().equalsIgnoreCase(s))
+                                return null;
                         }
-                    }
-                    rawOptions.computeIfAbsent(on, k -> new ArrayList<>()).add(values);
-                }
-            } else {
-                if(nextSegment < segments.size()) {
-                    RouteSegment segment = segments.get(nextSegment);
-                    if(segment.isDynamic()) {
-                        Object res = safeApply(segment.getResolver(), s);
-                        if(res == null)
-                            return null;
-                        params.put(segment.getName(), res);
+                        nextSegment++;
                     } else {
-                        if(!segment.getName().equalsIgnoreCase(s))
-                            return null;
+                        scratch.arg(t);
                     }
-                    nextSegment++;
-                } else {
-                    rawArgs.add(s);
                 }
             }
+            if(nextSegment < segments.size())
+                return null;
+            return scratch.result(args);
+        } finally {
+            scratch.release();
         }
-        if(nextSegment < segments.size())
-            return null;
-        return new CommandParseResult(rawArgs, params, rawOptions);
     }
 
     /**
@@ -223,8 +277,26 @@ public class CommandRoute {
      * @throws CommandValidationException if args or options are invalid
      */
     public CommandContext validate(CommandParseResult parsed) throws CommandValidationException {
-        int minArgs = (int) arguments.stream().filter(RouteArgument::isRequired).count();
-        int maxArgs = arguments.stream().anyMatch(RouteArgument::isVarArg) ? Integer.MAX_VALUE : arguments.size();
+        return validate(parsed, null);
+    }
+
+    /**
+     * Validates like validate(parsed), but resolves all args, varargs and option parameters at once on the executor
+     * and waits for them before the context is built. Values of AsyncResolvers are awaited without blocking a thread.
+     * The errors are the same as in sequential validation.
+     * @param timeout deadline for all resolutions, the validation fails when it's exceeded
+     */
+    public CommandContext validate(CommandParseResult parsed, Executor executor, long timeout, TimeUnit unit) throws CommandValidationException {
+        return validate(parsed, new ResolutionFanout(executor, unit.toNanos(timeout)));
+    }
+
+    /**
+     * @param fanout collects the resolutions instead of running them in place, null for sequential validation
+     */
+    private CommandContext validate(CommandParseResult parsed, ResolutionFanout fanout) throws CommandValidationException {
+        RouteIndex index = index();
+        int minArgs = index.minArgs;
+        int maxArgs = index.maxArgs;
         if(parsed.getArguments().size() < minArgs) {
             RouteArgument missing = arguments.get(parsed.getArguments().size());
             throw new CommandValidationException("Missing required argument '" + missing.getName() + "'");
@@ -234,42 +306,78 @@ public class CommandRoute {
             throw new CommandValidationException("Unexpected argument: " + unexpected);
         }
         Map<String, Object> resolvedArgs = new HashMap<>();
-        for(int i=0; i<parsed.getArguments().size(); i++) {
-            RouteArgument argument = arguments.get(Math.min(arguments.size()-1, i));
+        PrimitiveValues primitiveArgs = index.argLayout.isEmpty() ? null : new PrimitiveValues(index.argLayout);
+        Object varArgValues = null;
+        int argCount = parsed.getArguments().size();
+        if(index.varArg != null && index.varArg.isStreaming()) {
+            List<String> raw = parsed.getArguments().subList(Math.min(argCount, arguments.size()-1), argCount);
+            if(index.varArg.isPrevalidated() && fanout != null) {
+                fanoutVarArg(fanout, index.varArg, (byte) 0, raw, null);
+            } else if(index.varArg.isPrevalidated()) {
+                Function<String, Object> resolver = index.varArg.getResolver();
+                for(int i=0; resolver != null && i<raw.size(); i++) {
+                    if(safeApply(resolver, raw.get(i)) == null)
+                        throw new CommandValidationException("Invalid argument value for argument '" + index.varArg.getName() + "': " + raw.get(i));
+                }
+            }
+            varArgValues = new LazyVarArg<>(index.varArg.getName(), index.varArg.getResolver(), raw);
+            argCount -= raw.size();
+        } else if(index.varArg != null) {
+            varArgValues = newVarArgValues(index.varArgType, Math.max(0, argCount - (arguments.size()-1)));
+        }
+        for(int i=0; i<argCount; i++) {
+            int a = Math.min(arguments.size()-1, i);
+            RouteArgument argument = arguments.get(a);
             String av = parsed.getArguments().get(i);
+            if(fanout != null && argument.isVarArg()) {
+                // The vararg is the last argument, so all remaining values belong to it
+                fanoutVarArg(fanout, argument, index.varArgType, parsed.getArguments().subList(i, argCount), varArgValues);
+                break;
+            }
+            if(fanout != null) {
+                fanoutArg(fanout, argument, index.argSlots[a], av, resolvedArgs, primitiveArgs);
+                continue;
+            }
+            if(argument.isVarArg()) {
+                if(!resolveVarArg(varArgValues, index.varArgType, i - a, argument.getResolver(), av))
+                    throw new CommandValidationException("Invalid argument value for argument '" + argument.getName() + "': " + av);
+                continue;
+            }
+            if(index.argSlots[a] != -1) {
+                if(!primitiveArgs.resolve(index.argSlots[a], argument.getResolver(), av))
+                    throw new CommandValidationException("Invalid argument value for argument '" + argument.getName() + "': " + av);
+                continue;
+            }
             Object value = av;
             if(argument.getResolver() != null) {
                 value = safeApply(argument.getResolver(), av);
                 if(value == null)
                     throw new CommandValidationException("Invalid argument value for argument '" + argument.getName() + "': " + av);
             }
-            if(argument.isVarArg()) {
-                List<Object> values = (List<Object>) resolvedArgs.computeIfAbsent(argument.getName(), n -> new ArrayList<>());
-                values.add(value);
-            } else {
-                resolvedArgs.put(argument.getName(), value);
-            }
+            resolvedArgs.put(argument.getName(), value);
         }
-        arguments.stream().filter(RouteArgument::isVarArg).forEach(a -> resolvedArgs.computeIfAbsent(a.getName(), n -> new ArrayList<>()));
+        if(index.varArg != null)
+            resolvedArgs.put(index.varArg.getName(), varArgValues);
         for(String o : parsed.getOptions().keySet()) {
-            if(options.stream().noneMatch(op -> op.getName().equalsIgnoreCase(o)))
-                throw new CommandValidationException("Unknown option '" + optionName(o) + "'");
+            if(index.longOption(o, 0, o.length()) == null)
+                throw invalid(fanout, "Unknown option '" + optionName(o) + "'");
         }
         Map<String, List<OptionValues>> resolvedOptions = new HashMap<>();
         for(RouteOption option : options) {
             List<List<String>> instances = parsed.getOptions().get(option.getName());
             if(instances == null) {
                 if(option.isRequired())
-                    throw new CommandValidationException("Missing required option '" + optionName(option.getName()) + "'");
+                    throw invalid(fanout, "Missing required option '" + optionName(option.getName()) + "'");
                 resolvedOptions.put(option.getName(), new ArrayList<>());
             } else {
                 if(instances.size() > 1 && !option.isRepeatable())
-                    throw new CommandValidationException("Option '" + optionName(option.getName()) + "' can only be specified once");
+                    throw invalid(fanout, "Option '" + optionName(option.getName()) + "' can only be specified once");
                 List<OptionValues> optionValues = new ArrayList<>();
+                OptionLayout optionLayout = index.optionLayouts.get(option);
                 for(List<String> instance : instances) {
                     if(instance.size() > option.getParameters().size()) {
                         if(option.getParameters().size() == 0) {
-                            throw new CommandValidationException("The option '" + optionName(option.getName()) + "' does not allow any parameters, given '" + instance.get(0) + "'");
+                            throw invalid(fanout, "The option '" + optionName(option.getName()) + "' does not allow any parameters, given '" + instance.get(0) + "'");
                         } else {
                             // Will never happen because we only parse 0-1 params when we don't know the option, never more
                             throw new RuntimeException("This should be unreachable, if it does check for changes in the match logic");
@@ -277,12 +385,31 @@ public class CommandRoute {
                     }
                     if(instance.size() < option.getParameters().size()) {
                         RouteOptionParameter missing = option.getParameters().get(instance.size());
+                        if(fanout != null)
+                            fanout.join();
                         throw new RuntimeException("Option '" + optionName(option.getName()) + "' is missing the required parameter #" + instance.size() + " ('" + missing.getName() + "')");
                     }
                     Map<String, Object> optionParams = new HashMap<>();
+                    PrimitiveValues primitiveParams = optionLayout != null ? new PrimitiveValues(optionLayout.layout) : null;
                     for(int i=0; i<instance.size(); i++) {
                         RouteOptionParameter parameter = option.getParameters().get(i);
                         String iv = instance.get(i);
+                        if(fanout != null && parameter.getResolver() != null) {
+                            int n = i;
+                            Supplier<String> error = () -> "Parameter #" + n + " ('" + parameter.getName() + "') of option '" + optionName(option.getName()) + "' has invalid value: " + iv;
+                            if(optionLayout != null && optionLayout.slots[i] != -1) {
+                                int slot = optionLayout.slots[i];
+                                fanout.add(error, () -> primitiveParams.resolve(slot, parameter.getResolver(), iv));
+                            } else {
+                                fanout.add(error, parameter.getResolver(), iv, v -> optionParams.put(parameter.getName(), v));
+                            }
+                            continue;
+                        }
+                        if(optionLayout != null && optionLayout.slots[i] != -1) {
+                            if(!primitiveParams.resolve(optionLayout.slots[i], parameter.getResolver(), iv))
+                                throw new CommandValidationException("Parameter #" + i + " ('" + parameter.getName() + "') of option '" + optionName(option.getName()) + "' has invalid value: " + iv);
+                            continue;
+                        }
                         Object value = iv;
                         if(parameter.getResolver() != null) {
                             value = safeApply(parameter.getResolver(), iv);
@@ -291,12 +418,132 @@ public class CommandRoute {
                         }
                         optionParams.put(parameter.getName(), value);
                     }
-                    optionValues.add(new OptionValues(optionParams));
+                    optionValues.add(new OptionValues(optionParams, primitiveParams));
                 }
                 resolvedOptions.put(option.getName(), optionValues);
             }
         }
-        return new CommandContext(resolvedArgs, parsed.getParameters(), resolvedOptions);
+        if(fanout != null)
+            fanout.join();
+        return new CommandContext(resolvedArgs, primitiveArgs, parsed.getParameters(), resolvedOptions);
+    }
+
+    /**
+     * Adds the resolution of an argument to the fan out, values without resolver are stored directly
+     */
+    private static void fanoutArg(ResolutionFanout fanout, RouteArgument argument, int slot, String av, Map<String, Object> resolvedArgs, PrimitiveValues primitiveArgs) {
+        Function<String, Object> resolver = argument.getResolver();
+        Supplier<String> error = () -> "Invalid argument value for argument '" + argument.getName() + "': " + av;
+        if(slot != -1) {
+            fanout.add(error, () -> primitiveArgs.resolve(slot, resolver, av));
+        } else if(resolver != null) {
+            fanout.add(error, resolver, av, v -> resolvedArgs.put(argument.getName(), v));
+        } else {
+            resolvedArgs.put(argument.getName(), av);
+        }
+    }
+
+    /**
+     * Adds the resolution of all values of a vararg to the fan out
+     * @param values the values created by newVarArgValues, null if the values are only validated
+     */
+    private static void fanoutVarArg(ResolutionFanout fanout, RouteArgument argument, byte type, List<String> raw, Object values) {
+        Function<String, Object> resolver = argument.getResolver();
+        IntFunction<String> error = i -> "Invalid argument value for argument '" + argument.getName() + "': " + raw.get(i);
+        if(type != 0) {
+            fanout.addRange(raw.size(), i -> resolveVarArg(values, type, i, resolver, raw.get(i)), error, null);
+            return;
+        }
+        List<Object> list = (List<Object>) values;
+        if(resolver == null) {
+            if(list != null)
+                list.addAll(raw);
+        } else if(resolver instanceof AsyncResolver) {
+            for(int i=0; i<raw.size(); i++) {
+                int n = i;
+                fanout.add(() -> error.apply(n), resolver, raw.get(i), list != null ? list::add : null);
+            }
+        } else if(list == null) {
+            fanout.addRange(raw.size(), i -> resolver.apply(raw.get(i)) != null, error, null);
+        } else {
+            Object[] resolved = new Object[raw.size()];
+            fanout.addRange(raw.size(), i -> (resolved[i] = resolver.apply(raw.get(i))) != null, error, () -> list.addAll(Arrays.asList(resolved)));
+        }
+    }
+
+    /**
+     * Structural errors of a parallel validation are only reported if no value in front of them is invalid
+     */
+    private static CommandValidationException invalid(ResolutionFanout fanout, String message) throws CommandValidationException {
+        if(fanout != null)
+            fanout.join();
+        return new CommandValidationException(message);
+    }
+
+    private static Object newVarArgValues(byte type, int size) {
+        switch (type) {
+            case PrimitiveValues.INT:
+                return new int[size];
+            case PrimitiveValues.LONG:
+                return new long[size];
+            case PrimitiveValues.DOUBLE:
+                return new double[size];
+            case PrimitiveValues.BOOLEAN:
+                return new boolean[size];
+            default:
+                return new ArrayList<>(size);
+        }
+    }
+
+    private static boolean resolveVarArg(Object values, byte type, int i, Function<String, Object> resolver, String value) {
+        try {
+            switch (type) {
+                case PrimitiveValues.INT:
+                    ((int[]) values)[i] = ((IntResolver) resolver).resolveInt(value);
+                    return true;
+                case PrimitiveValues.LONG:
+                    ((long[]) values)[i] = ((LongResolver) resolver).resolveLong(value);
+                    return true;
+                case PrimitiveValues.DOUBLE:
+                    ((double[]) values)[i] = ((DoubleResolver) resolver).resolveDouble(value);
+                    return true;
+                case PrimitiveValues.BOOLEAN:
+                    ((boolean[]) values)[i] = ((BooleanResolver) resolver).resolveBoolean(value);
+                    return true;
+            }
+        } catch (Exception ex) {
+            return false;
+        }
+        Object resolved = value;
+        if(resolver != null) {
+            resolved = safeApply(resolver, value);
+            if(resolved == null)
+                return false;
+        }
+        ((List<Object>) values).add(resolved);
+        return true;
+    }
+
+    /**
+     * Builds the lookup tables used by match and validate. They are rebuilt lazily after the route has been changed.
+     * @return the route itself
+     */
+    public CommandRoute compile() {
+        index();
+        return this;
+    }
+
+    private RouteIndex index() {
+        RouteIndex index = this.index;
+        if(index == null) {
+            index = new RouteIndex(this);
+            this.index = index;
+        }
+        return index;
+    }
+
+    static boolean isOption(String s) {
+        return (s.length() >= 2 && s.charAt(0) == '-' && s.charAt(1) != '-') || (s.length() >= 3 && s.startsWith("--") && s.charAt(2) != '-');
     }
 
     private static String optionName(String name) {
@@ -306,28 +553,99 @@ public class CommandRoute {
     }
 
     public boolean execute(CommandContext context) throws Exception {
+        return execute(context, null);
+    }
+
+    /**
+     * @param recorder receives the duration of every middleware and the handler, may be null
+     */
+    public boolean execute(CommandContext context, RouteRecorder recorder) throws Exception {
         if(handler == null)
             throw new IllegalStateException("Route has no handler");
-        for(CommandHandler mw : beforeMiddlewares) {
+        for(int i=0; i<beforeMiddlewares.size(); i++) {
+            Boolean exit = handle(beforeMiddlewares.get(i), context, recorder, Phase.BEFORE, i);
+            if(exit != null)
+                return exit;
+        }
+        Boolean exit = handle(handler, context, recorder, Phase.HANDLER, 0);
+        if(exit != null)
+            return exit;
+        for(int i=0; i<afterMiddlewares.size(); i++) {
+            exit = handle(afterMiddlewares.get(i), context, recorder, Phase.AFTER, i);
+            if(exit != null)
+                return exit;
+        }
+        return true;
+    }
+
+    /**
+     * @return null if the execution continues or the result of a CommandExitException
+     */
+    private static Boolean handle(CommandHandler handler, CommandContext context, RouteRecorder recorder, Phase phase, int index) {
+        if(recorder == null) {
             try {
-                mw.handle(context);
+                handler.handle(context);
+                return null;
             } catch (CommandExitException ex) {
                 return ex.isSuccess();
             }
         }
+        long start = System.nanoTime();
         try {
             handler.handle(context);
+            return null;
         } catch (CommandExitException ex) {
+            recorder.exit(ex.isSuccess());
             return ex.isSuccess();
+        } finally {
+            recorder.record(phase, index, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Executes the middlewares and the handler one after another without blocking the calling thread.
+     * AsyncCommandHandlers are chained through their futures, all other handlers are run on the given executor.
+     * @param context the context to execute the route with
+     * @param executor executor to run synchronous handlers on
+     * @return future that completes with the result or exceptionally if a handler failed
+     */
+    public CompletableFuture<Boolean> executeAsync(CommandContext context, Executor executor) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if(handler == null) {
+            result.completeExceptionally(new IllegalStateException("Route has no handler"));
+            return result;
         }
-        for(CommandHandler mw : afterMiddlewares) {
+        List<CommandHandler> chain = new ArrayList<>(beforeMiddlewares.size() + afterMiddlewares.size() + 1);
+        chain.addAll(beforeMiddlewares);
+        chain.add(handler);
+        chain.addAll(afterMiddlewares);
+        // A null value means the chain continues, anything else is the result of a CommandExitException
+        CompletableFuture<Boolean> future = CompletableFuture.completedFuture(null);
+        for(CommandHandler h : chain)
+            future = future.thenCompose(exit -> exit != null ? CompletableFuture.completedFuture(exit) : handleAsync(h, context, executor));
+        return future.thenApply(exit -> exit != null ? exit : true);
+    }
+
+    private static CompletableFuture<Boolean> handleAsync(CommandHandler handler, CommandContext context, Executor executor) {
+        CompletableFuture<Void> future;
+        if(handler instanceof AsyncCommandHandler) {
             try {
-                mw.handle(context);
-            } catch (CommandExitException ex) {
-                return ex.isSuccess();
+                future = ((AsyncCommandHandler) handler).handleAsync(context);
+            } catch (Throwable t) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(t);
             }
+        } else {
+            future = CompletableFuture.runAsync(() -> handler.handle(context), executor);
         }
-        return true;
+        return future.handle((v, t) -> {
+            if(t == null)
+                return null;
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if(cause instanceof CommandExitException)
+                return ((CommandExitException) cause).isSuccess();
+            throw t instanceof CompletionException ? (CompletionException) t : new CompletionException(t);
+        });
     }
 
     private static <T,R> R safeApply(Function<T, R> function, T value) {
@@ -338,4 +656,199 @@ public class CommandRoute {
         }
     }
 
+    private static class RouteIndex {
+
+        final Map<Character, RouteOption> shortOptions;
+        /**
+         * Open addressing table of all options by their case folded name, so option names can be looked up
+         * directly from a region of a command line token without creating a substring
+         */
+        final RouteOption[] longOptions;
+        final int minArgs;
+        final int maxArgs;
+        final RouteArgument varArg;
+        final byte varArgType;
+        /**
+         * Slots of the arguments with primitive resolvers in argLayout, -1 for all other arguments
+         */
+        final int[] argSlots;
+        final PrimitiveValues.Layout argLayout = new PrimitiveValues.Layout();
+        final Map<RouteOption, OptionLayout> optionLayouts = new IdentityHashMap<>();
+
+        private RouteIndex(CommandRoute route) {
+            Map<Character, RouteOption> shortOptions = new HashMap<>();
+            int size = 1;
+            while (size < route.options.size() * 2)
+                size <<= 1;
+            longOptions = new RouteOption[size];
+            for(RouteOption option : route.options) {
+                if(option.name.length() == 1)
+                    shortOptions.put(option.name.charAt(0), option);
+                if(longOption(option.name, 0, option.name.length()) == null) {
+                    int i = hash(option.name, 0, option.name.length()) & (size - 1);
+                    while (longOptions[i] != null)
+                        i = (i + 1) & (size - 1);
+                    longOptions[i] = option;
+                }
+            }
+            for(RouteOption option : route.options) {
+                OptionLayout optionLayout = new OptionLayout(option);
+                if(!optionLayout.layout.isEmpty())
+                    optionLayouts.put(option, optionLayout);
+            }
+            int minArgs = 0;
+            RouteArgument varArg = null;
+            argSlots = new int[route.arguments.size()];
+            for(int i=0; i<argSlots.length; i++) {
+                RouteArgument argument = route.arguments.get(i);
+                byte type = PrimitiveValues.typeOf(argument.getResolver());
+                argSlots[i] = type != 0 && !argument.isVarArg() ? argLayout.add(argument.getName(), type) : -1;
+                if(argument.isRequired())
+                    minArgs++;
+                if(argument.isVarArg())
+                    varArg = argument;
+            }
+            this.varArgType = varArg != null && !varArg.isStreaming() ? PrimitiveValues.typeOf(varArg.getResolver()) : 0;
+            this.shortOptions = Collections.unmodifiableMap(shortOptions);
+            this.minArgs = minArgs;
+            this.maxArgs = varArg != null ? Integer.MAX_VALUE : route.arguments.size();
+            this.varArg = varArg;
+        }
+
+        RouteOption longOption(String s, int from, int to) {
+            int mask = longOptions.length - 1;
+            for(int i = hash(s, from, to) & mask; longOptions[i] != null; i = (i + 1) & mask) {
+                String name = longOptions[i].name;
+                if(name.length() == to - from && name.regionMatches(true, 0, s, from, to - from))
+                    return longOptions[i];
+            }
+            return null;
+        }
+
+        private static int hash(String s, int from, int to) {
+            int h = 0;
+            for(int i=from; i<to; i++)
+                h = 31 * h + CommandRouter.foldCase(s.charAt(i));
+            return h ^ (h >>> 16);
+        }
+
+    }
+
+    private static class OptionLayout {
+
+        final PrimitiveValues.Layout layout = new PrimitiveValues.Layout();
+        /**
+         * Slots of the parameters with primitive resolvers in the layout, -1 for all other parameters
+         */
+        final int[] slots;
+
+        private OptionLayout(RouteOption option) {
+            slots = new int[option.parameters.size()];
+            for(int i=0; i<slots.length; i++) {
+                RouteOptionParameter parameter = option.parameters.get(i);
+                byte type = PrimitiveValues.typeOf(parameter.getResolver());
+                slots[i] = type != 0 ? layout.add(parameter.getName(), type) : -1;
+            }
+        }
+
+    }
+
+    /**
+     * Per thread buffer for the positions of options and arguments found while matching.
+     * Nothing is allocated for a route until it actually matched and the result gets built.
+     */
+    private static class MatchScratch {
+
+        private static final ThreadLocal<MatchScratch> SCRATCH = ThreadLocal.withInitial(MatchScratch::new);
+
+        boolean inUse;
+        int[] argTokens = new int[16];
+        int argCount;
+        String[] paramNames = new String[4];
+        Object[] paramValues = new Object[4];
+        int paramCount;
+        int[] optionTokens = new int[8];
+        int[] optionNameStarts = new int[8];
+        int[] optionNameEnds = new int[8];
+        int[] optionValueCounts = new int[8];
+        boolean[] optionInline = new boolean[8];
+        RouteOption[] options = new RouteOption[8];
+        int optionCount;
+
+        static MatchScratch acquire() {
+            MatchScratch scratch = SCRATCH.get();
+            // A resolver might dispatch another command on the same thread while we are still matching
+            if(scratch.inUse)
+                return new MatchScratch();
+            scratch.inUse = true;
+            return scratch;
+        }
+
+        void release() {
+            Arrays.fill(paramValues, 0, paramCount, null);
+            Arrays.fill(options, 0, optionCount, null);
+            argCount = 0;
+            paramCount = 0;
+            optionCount = 0;
+            inUse = false;
+        }
+
+        void arg(int token) {
+            if(argCount == argTokens.length)
+                argTokens = Arrays.copyOf(argTokens, argCount * 2);
+            argTokens[argCount++] = token;
+        }
+
+        void param(String name, Object value) {
+            if(paramCount == paramNames.length) {
+                paramNames = Arrays.copyOf(paramNames, paramCount * 2);
+                paramValues = Arrays.copyOf(paramValues, paramCount * 2);
+            }
+            paramNames[paramCount] = name;
+            paramValues[paramCount++] = value;
+        }
+
+        void option(int token, int nameStart, int nameEnd, RouteOption option, int valueCount, boolean inline) {
+            if(optionCount == optionTokens.length) {
+                int size = optionCount * 2;
+                optionTokens = Arrays.copyOf(optionTokens, size);
+                optionNameStarts = Arrays.copyOf(optionNameStarts, size);
+                optionNameEnds = Arrays.copyOf(optionNameEnds, size);
+                optionValueCounts = Arrays.copyOf(optionValueCounts, size);
+                optionInline = Arrays.copyOf(optionInline, size);
+                options = Arrays.copyOf(options, size);
+            }
+            optionTokens[optionCount] = token;
+            optionNameStarts[optionCount] = nameStart;
+            optionNameEnds[optionCount] = nameEnd;
+            optionValueCounts[optionCount] = valueCount;
+            optionInline[optionCount] = inline;
+            options[optionCount++] = option;
+        }
+
+        CommandParseResult result(String[] args) {
+            List<String> rawArgs = new ArrayList<>(argCount);
+            for(int i=0; i<argCount; i++)
+                rawArgs.add(args[argTokens[i]]);
+            Map<String, Object> params = new HashMap<>();
+            for(int i=0; i<paramCount; i++)
+                params.put(paramNames[i], paramValues[i]);
+            Map<String, List<List<String>>> rawOptions = new HashMap<>();
+            for(int i=0; i<optionCount; i++) {
+                String token = args[optionTokens[i]];
+                String name = options[i] != null ? options[i].name : CommandRouter.foldCase(token.substring(optionNameStarts[i], optionNameEnds[i]));
+                List<String> values = new ArrayList<>(optionValueCounts[i]);
+                if(optionInline[i]) {
+                    values.add(token.substring(optionNameEnds[i] + 1));
+                } else {
+                    for(int j=1; j<=optionValueCounts[i]; j++)
+                        values.add(args[optionTokens[i] + j]);
+                }
+                rawOptions.computeIfAbsent(name, k -> new ArrayList<>()).add(values);
+            }
+            return new CommandParseResult(rawArgs, params, rawOptions);
+        }
+
+    }
+
 }
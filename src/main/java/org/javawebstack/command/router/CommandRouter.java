@@ -2,27 +2,263 @@ package org.javawebstack.command.router;
 
 import org.javawebstack.command.CommandContext;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public class CommandRouter {
 
-    List<CommandRoute> routes = new ArrayList<>();
+    private final List<CommandRoute> routes = new ArrayList<>();
+    /**
+     * Immutable snapshot of the routes that is used for matching. Changes only mark it as outdated, so registering many
+     * routes at once doesn't rebuild the tree every time. It gets rebuilt on the first match after a change.
+     */
+    private volatile RouteTable table = new RouteTable(Collections.emptyList());
+    private final SuggestionIndex suggestions = new SuggestionIndex();
+    private final CompletionIndex completions = new CompletionIndex();
+    private volatile ParallelValidation parallelValidation;
 
-    public CommandRouter add(CommandRoute route) {
+    public synchronized CommandRouter add(CommandRoute route) {
+        route.compile();
         routes.add(route);
+        suggestions.add(route);
+        completions.add(route);
+        table = null;
         return this;
     }
 
+    public synchronized boolean remove(CommandRoute route) {
+        return removeIf(r -> r == route);
+    }
+
+    public synchronized boolean removeIf(Predicate<CommandRoute> filter) {
+        boolean removed = false;
+        for(Iterator<CommandRoute> it = routes.iterator(); it.hasNext(); ) {
+            CommandRoute route = it.next();
+            if(filter.test(route)) {
+                it.remove();
+                suggestions.remove(route);
+                completions.remove(route);
+                removed = true;
+            }
+        }
+        if(!removed)
+            return false;
+        table = null;
+        return true;
+    }
+
+    /**
+     * Looks up the commands with a segment path close to the given command line, e.g. to handle typos
+     * @param args the command line that didn't match
+     * @param limit maximum number of suggestions
+     * @return the segment paths of the closest routes, nearest first
+     */
+    public List<String> suggest(String[] args, int limit) {
+        return suggestions.suggest(args, limit);
+    }
+
+    /**
+     * Looks up the completion candidates for a word of a partial command line: segments, option names and the values
+     * of CandidateResolvers for dynamic segments, arguments and option parameters
+     * @param words the words of the command line without the program name
+     * @param index index of the word that is completed, it may be equal to the number of words to complete a new word
+     * @return the sorted candidates
+     */
+    public List<String> complete(String[] words, int index) {
+        return completions.complete(words, index);
+    }
+
+    /**
+     * Resolves the values of matched commands in parallel, see CommandRoute.validate(CommandParseResult, Executor, long, TimeUnit)
+     * @param executor executor for synchronous resolvers, null to validate sequentially again
+     * @param timeout deadline for the resolution of all values of a command
+     */
+    public CommandRouter parallelValidation(Executor executor, long timeout, TimeUnit unit) {
+        this.parallelValidation = executor == null ? null : new ParallelValidation(executor, unit.toNanos(timeout));
+        return this;
+    }
+
+    /**
+     * @return a copy of the routes in registration order, changing it doesn't change the router
+     */
+    public List<CommandRoute> getRoutes() {
+        return new ArrayList<>(table().routes);
+    }
+
+    private RouteTable table() {
+        RouteTable table = this.table;
+        if(table != null)
+            return table;
+        synchronized (this) {
+            if(this.table == null)
+                this.table = new RouteTable(routes);
+            return this.table;
+        }
+    }
+
     public CommandRouterResult match(String[] args) throws CommandValidationException {
-        for(CommandRoute route : routes) {
+        return match(args, false);
+    }
+
+    /**
+     * @param timed whether the time spent on routing and validation should be measured, see CommandRouterResult
+     */
+    public CommandRouterResult match(String[] args, boolean timed) throws CommandValidationException {
+        long start = timed ? System.nanoTime() : 0;
+        RouteTable table = table();
+        BitSet candidates = table.candidates(args);
+        for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            CommandRoute route = table.routes.get(i);
             CommandParseResult parseResult = route.match(args);
             if(parseResult != null) {
-                CommandContext context = route.validate(parseResult);
-                return new CommandRouterResult(true, route, context);
+                long matched = timed ? System.nanoTime() : 0;
+                CommandContext context;
+                try {
+                    ParallelValidation parallel = parallelValidation;
+                    context = parallel == null ? route.validate(parseResult) : route.validate(parseResult, parallel.executor, parallel.timeoutNanos, TimeUnit.NANOSECONDS);
+                } catch (CommandValidationException ex) {
+                    ex.route = route;
+                    if(timed) {
+                        ex.routingNanos = matched - start;
+                        ex.validationNanos = System.nanoTime() - matched;
+                    }
+                    throw ex;
+                }
+                CommandRouterResult result = new CommandRouterResult(true, route, context);
+                if(timed) {
+                    result.routingNanos = matched - start;
+                    result.validationNanos = System.nanoTime() - matched;
+                }
+                return result;
+            }
+        }
+        CommandRouterResult result = new CommandRouterResult(false, null, null);
+        if(timed)
+            result.routingNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Looks up all routes that could possibly match the given command line.
+     * Only the tokens in front of the first option are fixed segment positions for every route, so the tree is walked
+     * along those and every route below the reached nodes is a candidate.
+     * @param args command line to look up
+     * @return indices of the candidate routes in registration order
+     */
+    private static BitSet candidates(Node root, int routeCount, String[] args) {
+        int fixed = 0;
+        while (fixed < args.length && !CommandRoute.isOption(args[fixed]))
+            fixed++;
+        BitSet candidates = new BitSet(routeCount);
+        collect(root, args, 0, fixed, candidates);
+        return candidates;
+    }
+
+    private static void collect(Node node, String[] args, int depth, int fixed, BitSet candidates) {
+        if(depth == fixed) {
+            collectAll(node, candidates);
+            return;
+        }
+        for(int i=0; i<node.routeCount; i++)
+            candidates.set(node.routes[i]);
+        Node child = node.children.get(foldCase(args[depth]));
+        if(child != null)
+            collect(child, args, depth + 1, fixed, candidates);
+        if(node.dynamic != null)
+            collect(node.dynamic, args, depth + 1, fixed, candidates);
+    }
+
+    private static void collectAll(Node node, BitSet candidates) {
+        for(int i=0; i<node.routeCount; i++)
+            candidates.set(node.routes[i]);
+        for(Node child : node.children.values())
+            collectAll(child, candidates);
+        if(node.dynamic != null)
+            collectAll(node.dynamic, candidates);
+    }
+
+    /**
+     * Folds the case of every char the same way String.equalsIgnoreCase compares them,
+     * so two names have the same folded form exactly when they are equal ignoring case.
+     */
+    static String foldCase(String s) {
+        char[] chars = null;
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            char f = foldCase(c);
+            if(c != f) {
+                if(chars == null)
+                    chars = s.toCharArray();
+                chars[i] = f;
             }
         }
-        return new CommandRouterResult(false, null, null);
+        return chars == null ? s : new String(chars);
+    }
+
+    static char foldCase(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static class ParallelValidation {
+
+        final Executor executor;
+        final long timeoutNanos;
+
+        private ParallelValidation(Executor executor, long timeoutNanos) {
+            this.executor = executor;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+    }
+
+    private static class RouteTable {
+
+        final List<CommandRoute> routes;
+        final Node root = new Node();
+
+        private RouteTable(List<CommandRoute> routes) {
+            this.routes = Collections.unmodifiableList(new ArrayList<>(routes));
+            for(int i=0; i<this.routes.size(); i++) {
+                CommandRoute route = this.routes.get(i);
+                route.compile();
+                Node node = root;
+                for(RouteSegment segment : route.getSegments()) {
+                    if(segment.isDynamic()) {
+                        if(node.dynamic == null)
+                            node.dynamic = new Node();
+                        node = node.dynamic;
+                    } else {
+                        node = node.children.computeIfAbsent(foldCase(segment.getName()), k -> new Node());
+                    }
+                }
+                node.addRoute(i);
+            }
+        }
+
+        BitSet candidates(String[] args) {
+            return CommandRouter.candidates(root, routes.size(), args);
+        }
+
+    }
+
+    private static class Node {
+
+        final Map<String, Node> children = new HashMap<>();
+        Node dynamic;
+        /**
+         * Indices of the routes that end at this node, only the first routeCount are used
+         */
+        int[] routes = new int[1];
+        int routeCount;
+
+        void addRoute(int index) {
+            if(routeCount == routes.length)
+                routes = Arrays.copyOf(routes, routeCount * 2);
+            routes[routeCount++] = index;
+        }
+
     }
 
 }
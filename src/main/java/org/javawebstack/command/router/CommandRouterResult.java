@@ -7,6 +7,8 @@ public class CommandRouterResult {
     boolean matched;
     CommandRoute route;
     CommandContext context;
+    long routingNanos;
+    long validationNanos;
 
     public CommandRouterResult(boolean matched, CommandRoute route, CommandContext context) {
         this.matched = matched;
@@ -26,4 +28,18 @@ public class CommandRouterResult {
         return context;
     }
 
+    /**
+     * @return time spent finding the route, only measured by timed matches
+     */
+    public long getRoutingNanos() {
+        return routingNanos;
+    }
+
+    /**
+     * @return time spent validating the arguments, only measured by timed matches
+     */
+    public long getValidationNanos() {
+        return validationNanos;
+    }
+
 }
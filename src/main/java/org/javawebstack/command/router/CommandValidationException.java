@@ -2,8 +2,27 @@ package org.javawebstack.command.router;
 
 public class CommandValidationException extends Exception {
 
+    CommandRoute route;
+    long routingNanos;
+    long validationNanos;
+
     public CommandValidationException(String message) {
         super(message);
     }
 
+    /**
+     * @return the route that failed validation if the exception has been thrown by the router
+     */
+    public CommandRoute getRoute() {
+        return route;
+    }
+
+    public long getRoutingNanos() {
+        return routingNanos;
+    }
+
+    public long getValidationNanos() {
+        return validationNanos;
+    }
+
 }
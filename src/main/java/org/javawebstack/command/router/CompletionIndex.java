@@ -0,0 +1,200 @@
+package org.javawebstack.command.router;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Prefix index over the segment paths of the routes that serves shell completion.
+ * Static children are kept sorted by their case folded name, so the candidates for a prefix are a range of the map.
+ */
+class CompletionIndex {
+
+    private final Map<CommandRoute, Node> entries = new IdentityHashMap<>();
+    private final Node root = new Node(null);
+
+    synchronized void add(CommandRoute route) {
+        if(entries.containsKey(route))
+            return;
+        Node node = root;
+        for(RouteSegment segment : route.getSegments()) {
+            if(segment.isDynamic()) {
+                if(node.dynamic == null)
+                    node.dynamic = new Node(null);
+                node.dynamicSegments.add(segment);
+                node = node.dynamic;
+            } else {
+                String key = CommandRouter.foldCase(segment.getName());
+                Node child = node.children.get(key);
+                if(child == null) {
+                    child = new Node(segment.getName());
+                    node.children.put(key, child);
+                }
+                child.references++;
+                node = child;
+            }
+        }
+        node.routes.add(route);
+        entries.put(route, node);
+    }
+
+    synchronized void remove(CommandRoute route) {
+        if(entries.remove(route) == null)
+            return;
+        Node node = root;
+        for(RouteSegment segment : route.getSegments()) {
+            if(segment.isDynamic()) {
+                node.dynamicSegments.remove(segment);
+                node = node.dynamic;
+            } else {
+                Node child = node.children.get(CommandRouter.foldCase(segment.getName()));
+                if(--child.references == 0)
+                    node.children.remove(CommandRouter.foldCase(segment.getName()));
+                node = child;
+            }
+        }
+        node.routes.remove(route);
+    }
+
+    /**
+     * @param words the words of the command line without the program name
+     * @param index index of the word that is completed, it may be equal to the number of words to complete a new word
+     * @return the sorted candidates for the word
+     */
+    synchronized List<String> complete(String[] words, int index) {
+        String prefix = index < words.length ? words[index] : "";
+        // Nodes that are reachable with the words so far, with the number of arguments passed to their routes
+        List<Position> positions = new ArrayList<>();
+        positions.add(new Position(root, 0));
+        boolean segments = true;
+        Set<String> usedOptions = new HashSet<>();
+        RouteOption pendingOption = null;
+        int pendingParams = 0;
+        for(int i=0; i<index && i<words.length; i++) {
+            String word = words[i];
+            if(pendingParams > 0) {
+                pendingParams--;
+                continue;
+            }
+            if(CommandRoute.isOption(word)) {
+                segments = false;
+                RouteOption option = findOption(positions, word);
+                if(option != null) {
+                    usedOptions.add(option.getName());
+                    pendingOption = option;
+                    pendingParams = option.getParameters().size() - (word.indexOf('=') >= 0 ? 1 : 0);
+                }
+                continue;
+            }
+            List<Position> next = new ArrayList<>();
+            for(Position position : positions) {
+                if(!position.node.routes.isEmpty())
+                    next.add(new Position(position.node, position.args + 1));
+                if(!segments || position.args > 0)
+                    continue;
+                Node child = position.node.children.get(CommandRouter.foldCase(word));
+                if(child != null)
+                    next.add(new Position(child, 0));
+                if(position.node.dynamic != null)
+                    next.add(new Position(position.node.dynamic, 0));
+            }
+            positions = next;
+        }
+        Set<String> candidates = new TreeSet<>();
+        if(pendingParams > 0) {
+            List<RouteOptionParameter> parameters = pendingOption.getParameters();
+            addCandidates(candidates, parameters.get(parameters.size() - pendingParams).getResolver(), prefix);
+            return new ArrayList<>(candidates);
+        }
+        if(prefix.startsWith("-")) {
+            for(Position position : positions) {
+                for(CommandRoute route : position.node.routes) {
+                    for(RouteOption option : route.options) {
+                        if(!option.isRepeatable() && usedOptions.contains(option.getName()))
+                            continue;
+                        String name = (option.getName().length() == 1 ? "-" : "--") + option.getName();
+                        if(name.regionMatches(true, 0, prefix, 0, prefix.length()))
+                            candidates.add(name);
+                    }
+                }
+            }
+            return new ArrayList<>(candidates);
+        }
+        String key = CommandRouter.foldCase(prefix);
+        for(Position position : positions) {
+            Node node = position.node;
+            if(segments && position.args == 0) {
+                for(Node child : prefixRange(node.children, key).values())
+                    candidates.add(child.name);
+                for(RouteSegment segment : node.dynamicSegments)
+                    addCandidates(candidates, segment.getResolver(), prefix);
+            }
+            for(CommandRoute route : node.routes) {
+                List<RouteArgument> arguments = route.getArguments();
+                if(arguments.isEmpty())
+                    continue;
+                if(position.args < arguments.size())
+                    addCandidates(candidates, arguments.get(position.args).getResolver(), prefix);
+                else if(arguments.get(arguments.size() - 1).isVarArg())
+                    addCandidates(candidates, arguments.get(arguments.size() - 1).getResolver(), prefix);
+            }
+        }
+        return new ArrayList<>(candidates);
+    }
+
+    private static SortedMap<String, Node> prefixRange(TreeMap<String, Node> children, String prefix) {
+        if(prefix.isEmpty())
+            return children;
+        return children.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static RouteOption findOption(List<Position> positions, String word) {
+        int start = word.startsWith("--") ? 2 : 1;
+        int end = word.indexOf('=');
+        String name = word.substring(start, end < 0 ? word.length() : end);
+        for(Position position : positions) {
+            for(CommandRoute route : position.node.routes) {
+                for(RouteOption option : route.options) {
+                    if(option.getName().equalsIgnoreCase(name))
+                        return option;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void addCandidates(Set<String> candidates, Function<String, Object> resolver, String prefix) {
+        if(resolver instanceof CandidateResolver)
+            candidates.addAll(((CandidateResolver) resolver).candidates(prefix));
+    }
+
+    private static class Position {
+
+        final Node node;
+        final int args;
+
+        private Position(Node node, int args) {
+            this.node = node;
+            this.args = args;
+        }
+
+    }
+
+    private static class Node {
+
+        final String name;
+        final TreeMap<String, Node> children = new TreeMap<>();
+        Node dynamic;
+        /**
+         * Dynamic segments of the routes that continue with the dynamic child, their resolvers provide the candidates
+         */
+        final List<RouteSegment> dynamicSegments = new ArrayList<>();
+        final List<CommandRoute> routes = new ArrayList<>();
+        int references;
+
+        private Node(String name) {
+            this.name = name;
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.javawebstack.command.router;
+
+import java.util.function.Function;
+
+/**
+ * Resolver that produces a primitive double, the value is kept unboxed in the CommandContext.
+ * Invalid values are rejected by throwing an exception.
+ */
+@FunctionalInterface
+public interface DoubleResolver extends Function<String, Object> {
+
+    double resolveDouble(String value);
+
+    default Object apply(String value) {
+        return resolveDouble(value);
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.javawebstack.command.router;
+
+import java.util.function.Function;
+
+/**
+ * Resolver that produces a primitive int, the value is kept unboxed in the CommandContext.
+ * Invalid values are rejected by throwing an exception.
+ */
+@FunctionalInterface
+public interface IntResolver extends Function<String, Object> {
+
+    int resolveInt(String value);
+
+    default Object apply(String value) {
+        return resolveInt(value);
+    }
+
+}
@@ -0,0 +1,108 @@
+package org.javawebstack.command.router;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Values of a streaming vararg. Only the raw values are kept, every access resolves the value again, so even huge
+ * argument lists are processed with constant memory. Invalid values are reported when they are accessed
+ * by throwing an IllegalArgumentException, unless the route validates them upfront.
+ */
+public class LazyVarArg<T> extends AbstractList<T> implements RandomAccess {
+
+    private final String name;
+    private final Function<String, Object> resolver;
+    private final List<String> raw;
+
+    public LazyVarArg(String name, Function<String, Object> resolver, List<String> raw) {
+        this.name = name;
+        this.resolver = resolver;
+        this.raw = raw;
+    }
+
+    public T get(int index) {
+        String value = raw.get(index);
+        if(resolver == null)
+            return (T) value;
+        Object resolved;
+        try {
+            resolved = resolver.apply(value);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Invalid argument value for argument '" + name + "': " + value, ex);
+        }
+        if(resolved == null)
+            throw new IllegalArgumentException("Invalid argument value for argument '" + name + "': " + value);
+        return (T) resolved;
+    }
+
+    public int size() {
+        return raw.size();
+    }
+
+    /**
+     * @return the unresolved values
+     */
+    public List<String> getRaw() {
+        return Collections.unmodifiableList(raw);
+    }
+
+    public Spliterator<T> spliterator() {
+        return new RangeSpliterator(0, raw.size());
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Splits by index ranges, so parallel streams resolve the values on multiple threads without buffering them
+     */
+    private class RangeSpliterator implements Spliterator<T> {
+
+        private int index;
+        private final int end;
+
+        private RangeSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if(index >= end)
+                return false;
+            action.accept(get(index++));
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super T> action) {
+            while (index < end)
+                action.accept(get(index++));
+        }
+
+        public Spliterator<T> trySplit() {
+            int mid = (index + end) >>> 1;
+            if(mid <= index)
+                return null;
+            Spliterator<T> prefix = new RangeSpliterator(index, mid);
+            index = mid;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return end - index;
+        }
+
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+
+    }
+
+}
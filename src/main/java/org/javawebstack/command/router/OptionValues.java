@@ -1,23 +1,88 @@
 package org.javawebstack.command.router;
 
+import java.math.BigInteger;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OptionValues {
 
     private final Map<String, Object> values;
+    private final PrimitiveValues primitiveValues;
 
     public OptionValues(Map<String, Object> parameters) {
+        this(parameters, null);
+    }
+
+    public OptionValues(Map<String, Object> parameters, PrimitiveValues primitiveValues) {
         this.values = parameters;
+        this.primitiveValues = primitiveValues;
     }
 
+    /**
+     * @return all values, the values of primitive resolvers are boxed
+     */
     public Map<String, Object> getValues() {
-        return values;
+        if(primitiveValues == null)
+            return values;
+        Map<String, Object> all = new HashMap<>(values);
+        primitiveValues.putBoxed(all);
+        return all;
     }
 
     public <T> T value(String name) {
+        if(primitiveValues != null && primitiveValues.has(name))
+            return (T) primitiveValues.get(name);
         if(!values.containsKey(name))
             throw new IllegalArgumentException("Unknown option parameter '" + name + "'");
         return (T) values.get(name);
     }
 
+    public int intValue(String name) {
+        if(primitiveValues != null && primitiveValues.has(name))
+            return primitiveValues.getInt(name);
+        return Math.toIntExact(integer(name));
+    }
+
+    public long longValue(String name) {
+        if(primitiveValues != null && primitiveValues.has(name))
+            return primitiveValues.getLong(name);
+        return integer(name);
+    }
+
+    public double doubleValue(String name) {
+        if(primitiveValues != null && primitiveValues.has(name))
+            return primitiveValues.getDouble(name);
+        return number(name).doubleValue();
+    }
+
+    public boolean booleanValue(String name) {
+        if(primitiveValues != null && primitiveValues.has(name))
+            return primitiveValues.getBoolean(name);
+        Object value = value(name);
+        if(!(value instanceof Boolean))
+            throw new IllegalArgumentException("The option parameter '" + name + "' is not a boolean");
+        return (Boolean) value;
+    }
+
+    private Number number(String name) {
+        Object value = value(name);
+        if(!(value instanceof Number))
+            throw new IllegalArgumentException("The option parameter '" + name + "' is not a number");
+        return (Number) value;
+    }
+
+    /**
+     * Unboxes like PrimitiveValues, decimals are rejected instead of being truncated
+     */
+    private long integer(String name) {
+        Number n = number(name);
+        if(n instanceof BigInteger)
+            return ((BigInteger) n).longValueExact();
+        if(!(n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte || n instanceof AtomicInteger || n instanceof AtomicLong))
+            throw new IllegalArgumentException("The option parameter '" + name + "' is not an integer");
+        return n.longValue();
+    }
+
 }
@@ -0,0 +1,183 @@
+package org.javawebstack.command.router;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Unboxed storage for values of primitive resolvers. The slots of the names are shared by all values of the same
+ * route (or option), the values themselves are stored as the raw bits in a long array.
+ */
+public class PrimitiveValues {
+
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte BOOLEAN = 4;
+
+    private final Layout layout;
+    private final long[] values;
+    private final boolean[] present;
+
+    PrimitiveValues(Layout layout) {
+        this.layout = layout;
+        this.values = new long[layout.types.length];
+        this.present = new boolean[layout.types.length];
+    }
+
+    void setInt(int slot, int value) {
+        values[slot] = value;
+        present[slot] = true;
+    }
+
+    void setLong(int slot, long value) {
+        values[slot] = value;
+        present[slot] = true;
+    }
+
+    void setDouble(int slot, double value) {
+        values[slot] = Double.doubleToRawLongBits(value);
+        present[slot] = true;
+    }
+
+    void setBoolean(int slot, boolean value) {
+        values[slot] = value ? 1 : 0;
+        present[slot] = true;
+    }
+
+    public boolean has(String name) {
+        Integer slot = layout.slots.get(name);
+        return slot != null && present[slot];
+    }
+
+    public int getInt(String name) {
+        int slot = slot(name);
+        switch (layout.types[slot]) {
+            case INT:
+                return (int) values[slot];
+            case LONG:
+                return Math.toIntExact(values[slot]);
+            default:
+                throw new IllegalArgumentException("The value '" + name + "' is not an integer");
+        }
+    }
+
+    public long getLong(String name) {
+        int slot = slot(name);
+        switch (layout.types[slot]) {
+            case INT:
+            case LONG:
+                return values[slot];
+            default:
+                throw new IllegalArgumentException("The value '" + name + "' is not an integer");
+        }
+    }
+
+    public double getDouble(String name) {
+        int slot = slot(name);
+        switch (layout.types[slot]) {
+            case INT:
+            case LONG:
+                return values[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(values[slot]);
+            default:
+                throw new IllegalArgumentException("The value '" + name + "' is not a number");
+        }
+    }
+
+    public boolean getBoolean(String name) {
+        int slot = slot(name);
+        if(layout.types[slot] != BOOLEAN)
+            throw new IllegalArgumentException("The value '" + name + "' is not a boolean");
+        return values[slot] != 0;
+    }
+
+    public Object get(String name) {
+        int slot = slot(name);
+        switch (layout.types[slot]) {
+            case INT:
+                return (int) values[slot];
+            case LONG:
+                return values[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(values[slot]);
+            default:
+                return values[slot] != 0;
+        }
+    }
+
+    void putBoxed(Map<String, Object> map) {
+        for(Map.Entry<String, Integer> e : layout.slots.entrySet()) {
+            if(present[e.getValue()])
+                map.put(e.getKey(), get(e.getKey()));
+        }
+    }
+
+    private int slot(String name) {
+        Integer slot = layout.slots.get(name);
+        if(slot == null || !present[slot])
+            throw new IllegalArgumentException("Unknown value '" + name + "'");
+        return slot;
+    }
+
+    /**
+     * @return the primitive type of the resolver or 0 if it produces objects
+     */
+    static byte typeOf(Function<String, Object> resolver) {
+        if(resolver instanceof IntResolver)
+            return INT;
+        if(resolver instanceof LongResolver)
+            return LONG;
+        if(resolver instanceof DoubleResolver)
+            return DOUBLE;
+        if(resolver instanceof BooleanResolver)
+            return BOOLEAN;
+        return 0;
+    }
+
+    /**
+     * Resolves the value with the primitive resolver and stores it in the slot
+     * @return false if the resolver rejected the value
+     */
+    boolean resolve(int slot, Function<String, Object> resolver, String value) {
+        try {
+            switch (layout.types[slot]) {
+                case INT:
+                    setInt(slot, ((IntResolver) resolver).resolveInt(value));
+                    break;
+                case LONG:
+                    setLong(slot, ((LongResolver) resolver).resolveLong(value));
+                    break;
+                case DOUBLE:
+                    setDouble(slot, ((DoubleResolver) resolver).resolveDouble(value));
+                    break;
+                default:
+                    setBoolean(slot, ((BooleanResolver) resolver).resolveBoolean(value));
+                    break;
+            }
+            return true;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    static class Layout {
+
+        final Map<String, Integer> slots = new HashMap<>();
+        byte[] types = new byte[0];
+
+        int add(String name, byte type) {
+            int slot = types.length;
+            types = Arrays.copyOf(types, slot + 1);
+            types[slot] = type;
+            slots.put(name, slot);
+            return slot;
+        }
+
+        boolean isEmpty() {
+            return types.length == 0;
+        }
+
+    }
+
+}
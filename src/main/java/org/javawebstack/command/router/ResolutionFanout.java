@@ -0,0 +1,199 @@
+package org.javawebstack.command.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Collects the resolutions of a parallel validation and runs them all at once when joined. Single values get a task
+ * each, so slow resolvers overlap, while the values of varargs are split into a few index ranges per thread of the
+ * executor instead of one task per value. The results are checked in the order the resolutions have been added,
+ * so the first invalid value is the same as in sequential validation.
+ */
+class ResolutionFanout {
+
+    private final Executor executor;
+    private final long timeoutNanos;
+    private final long deadline;
+    private final List<Task> pending = new ArrayList<>();
+    private final List<Task> started = new ArrayList<>();
+    private final List<CompletableFuture<?>> futures = new ArrayList<>();
+    private int checked;
+    private volatile boolean cancelled;
+
+    ResolutionFanout(Executor executor, long timeoutNanos) {
+        this.executor = executor;
+        this.timeoutNanos = timeoutNanos;
+        this.deadline = System.nanoTime() + timeoutNanos;
+    }
+
+    /**
+     * Adds a resolution that stores its value itself, e.g. into a primitive slot. It has to write to a location
+     * no other resolution writes to.
+     * @param resolution returns false if the value is invalid
+     */
+    void add(Supplier<String> error, BooleanSupplier resolution) {
+        pending.add(new Task(i -> resolution.getAsBoolean(), i -> error.get(), 0, 1, null));
+    }
+
+    /**
+     * Adds the resolution of a value, the sink receives it on the validating thread when joined
+     * @param sink may be null if only the validity matters
+     */
+    void add(Supplier<String> error, Function<String, Object> resolver, String value, Consumer<Object> sink) {
+        Object[] result = new Object[1];
+        Task task = new Task(i -> (result[0] = resolver.apply(value)) != null, i -> error.get(), 0, 1, sink == null ? null : () -> sink.accept(result[0]));
+        if(resolver instanceof AsyncResolver) {
+            task.async = (AsyncResolver) resolver;
+            task.value = value;
+            task.result = result;
+        }
+        pending.add(task);
+    }
+
+    /**
+     * Adds the resolutions of the indices 0 to count-1, they have to write to distinct locations
+     * @param resolution returns false if the value at the index is invalid
+     * @param then runs on the validating thread when joined and all values are valid, may be null
+     */
+    void addRange(int count, IntPredicate resolution, IntFunction<String> error, Runnable then) {
+        if(count > 0)
+            pending.add(new Task(resolution, error, 0, count, then));
+    }
+
+    /**
+     * Runs the resolutions added since the last join and waits for them until the deadline
+     * @throws CommandValidationException for the first invalid value or if the deadline has been exceeded
+     */
+    void join() throws CommandValidationException {
+        start();
+        if(!futures.isEmpty()) {
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ex) {
+                cancel();
+                throw new CommandValidationException("Validation timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+            } catch (InterruptedException ex) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new CommandValidationException("Validation has been interrupted");
+            } catch (ExecutionException ex) {
+                // Tasks catch the exceptions of resolvers, there is nothing left to fail
+            }
+            futures.clear();
+        }
+        for(; checked < started.size(); checked++) {
+            Task task = started.get(checked);
+            if(task.invalid != -1)
+                throw new CommandValidationException(task.error.apply(task.invalid));
+            if(task.then != null)
+                task.then.run();
+        }
+    }
+
+    private void start() {
+        for(Task task : pending) {
+            if(task.async != null) {
+                startAsync(task);
+                continue;
+            }
+            int count = task.to - task.from;
+            int chunks = Math.min(count, parallelism());
+            if(chunks <= 1) {
+                started.add(task);
+                futures.add(CompletableFuture.runAsync(task::run, executor));
+                continue;
+            }
+            for(int c=0; c<chunks; c++) {
+                int from = (int) ((long) count * c / chunks);
+                int to = (int) ((long) count * (c + 1) / chunks);
+                Task chunk = new Task(task.resolution, task.error, from, to, c == chunks - 1 ? task.then : null);
+                started.add(chunk);
+                futures.add(CompletableFuture.runAsync(chunk::run, executor));
+            }
+        }
+        pending.clear();
+    }
+
+    private void startAsync(Task task) {
+        started.add(task);
+        try {
+            task.future = task.async.resolveAsync(task.value);
+        } catch (Exception ex) {
+            task.invalid = 0;
+            return;
+        }
+        if(task.future == null) {
+            task.invalid = 0;
+            return;
+        }
+        futures.add(task.future.handle((value, t) -> {
+            task.result[0] = value;
+            if(t != null || value == null)
+                task.invalid = 0;
+            return null;
+        }));
+    }
+
+    /**
+     * Number of chunks for the values of a vararg, a few per thread balance uneven resolvers
+     */
+    private int parallelism() {
+        if(executor instanceof ForkJoinPool)
+            return ((ForkJoinPool) executor).getParallelism() * 4;
+        if(executor instanceof ThreadPoolExecutor)
+            return Math.min(((ThreadPoolExecutor) executor).getMaximumPoolSize(), Runtime.getRuntime().availableProcessors() * 16);
+        return Runtime.getRuntime().availableProcessors() * 4;
+    }
+
+    /**
+     * Skips the values that haven't been resolved yet and cancels pending async values, they would be ignored anyway
+     */
+    private void cancel() {
+        cancelled = true;
+        for(Task task : started) {
+            if(task.future != null)
+                task.future.cancel(true);
+        }
+    }
+
+    private class Task {
+
+        final IntPredicate resolution;
+        final IntFunction<String> error;
+        final int from;
+        final int to;
+        final Runnable then;
+        int invalid = -1;
+        AsyncResolver async;
+        String value;
+        Object[] result;
+        CompletableFuture<?> future;
+
+        private Task(IntPredicate resolution, IntFunction<String> error, int from, int to, Runnable then) {
+            this.resolution = resolution;
+            this.error = error;
+            this.from = from;
+            this.to = to;
+            this.then = then;
+        }
+
+        private void run() {
+            for(int i=from; i<to && !cancelled; i++) {
+                boolean valid;
+                try {
+                    valid = resolution.test(i);
+                } catch (Exception ex) {
+                    valid = false;
+                }
+                if(!valid) {
+                    invalid = i;
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
@@ -7,6 +7,8 @@ public class RouteArgument {
     private final String name;
     private final boolean required;
     private final boolean varArg;
+    private final boolean streaming;
+    private final boolean prevalidated;
     Function<String, Object> resolver;
 
     public RouteArgument(String name, boolean required, boolean varArg) {
@@ -14,10 +16,22 @@ public class RouteArgument {
     }
 
     public RouteArgument(String name, boolean required, boolean varArg, Function<String, Object> resolver) {
+        this(name, required, varArg, resolver, false, false);
+    }
+
+    /**
+     * @param streaming whether the values of the vararg are resolved lazily, see LazyVarArg
+     * @param prevalidated whether the values of a streaming vararg are resolved once during validation to report invalid values early
+     */
+    public RouteArgument(String name, boolean required, boolean varArg, Function<String, Object> resolver, boolean streaming, boolean prevalidated) {
+        if(streaming && !varArg)
+            throw new IllegalArgumentException("Only varargs can be streamed");
         this.name = name;
         this.required = required;
         this.varArg = varArg;
         this.resolver = resolver;
+        this.streaming = streaming;
+        this.prevalidated = prevalidated;
     }
 
     public String getName() {
@@ -28,6 +42,14 @@ public class RouteArgument {
         return varArg;
     }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public boolean isPrevalidated() {
+        return prevalidated;
+    }
+
     public boolean isRequired() {
         return required;
     }
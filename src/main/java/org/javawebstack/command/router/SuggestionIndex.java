@@ -0,0 +1,287 @@
+package org.javawebstack.command.router;
+
+import java.util.*;
+
+/**
+ * Index of the segment paths of the routes, used to suggest commands for command lines that didn't match.
+ * The paths form a tree of segments and the names of the static children of every node are kept in a character trie.
+ * A token of the command line is matched by walking the trie with one row of the Levenshtein matrix per character,
+ * so common prefixes are only computed once and a prefix is dropped as soon as it exceeds the tolerated edit distance.
+ */
+class SuggestionIndex {
+
+    /**
+     * Highest score of a suggestion, where the score is the sum of the edit distances of the tokens
+     * plus the length of every segment that is missing on the command line
+     */
+    private static final int MAX_SCORE = 8;
+
+    private final Map<CommandRoute, Entry> entries = new IdentityHashMap<>();
+    private final Node root = new Node();
+    private int[][] rows = new int[16][];
+
+    synchronized void add(CommandRoute route) {
+        if(entries.containsKey(route) || route.getSegments().isEmpty())
+            return;
+        Node node = root;
+        StringBuilder label = new StringBuilder();
+        for(RouteSegment segment : route.getSegments()) {
+            if(label.length() > 0)
+                label.append(' ');
+            if(segment.isDynamic()) {
+                label.append('{').append(segment.getName()).append('}');
+                if(node.dynamic == null)
+                    node.dynamic = new Node();
+                node = node.dynamic;
+            } else {
+                label.append(segment.getName());
+                node = child(node, CommandRouter.foldCase(segment.getName()));
+            }
+        }
+        Entry entry = new Entry(node, label.toString());
+        entries.put(route, entry);
+        node.labels.merge(entry.label, 1, Integer::sum);
+    }
+
+    synchronized void remove(CommandRoute route) {
+        Entry entry = entries.remove(route);
+        // Nodes stay in the tree, removing them from the BK-trees isn't worth it
+        if(entry != null)
+            entry.node.labels.computeIfPresent(entry.label, (k, v) -> v > 1 ? v - 1 : null);
+    }
+
+    /**
+     * @param args the command line that didn't match
+     * @param limit maximum number of suggestions
+     * @return the closest commands, nearest first
+     */
+    synchronized List<String> suggest(String[] args, int limit) {
+        if(limit < 1)
+            return Collections.emptyList();
+        int fixed = 0;
+        while (fixed < args.length && !CommandRoute.isOption(args[fixed]))
+            fixed++;
+        if(fixed == 0)
+            return Collections.emptyList();
+        String[] tokens = new String[fixed];
+        for(int i=0; i<fixed; i++)
+            tokens[i] = CommandRouter.foldCase(args[i]);
+        Search search = new Search(tokens, limit);
+        walk(root, 0, 0, search);
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(search.scores.entrySet());
+        sorted.sort(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        List<String> suggestions = new ArrayList<>(Math.min(limit, sorted.size()));
+        for(int i=0; i<sorted.size() && i<limit; i++)
+            suggestions.add(sorted.get(i).getKey());
+        return suggestions;
+    }
+
+    private void walk(Node node, int depth, int score, Search search) {
+        // Routes can take arguments, so remaining tokens don't rule out the routes of this node
+        for(String label : node.labels.keySet())
+            search.add(label, score);
+        if(depth == search.tokens.length) {
+            missing(node, score, search);
+            return;
+        }
+        String token = search.tokens[depth];
+        int tolerance = Math.min(search.bound() - score, tolerance(token));
+        if(node.names != null && tolerance >= 0) {
+            // Closer names are walked first, so the bound tightens as early as possible
+            List<Name> matches = new ArrayList<>();
+            find(node.names, token, tolerance, matches);
+            matches.sort(Comparator.comparingInt(n -> n.distance));
+            for(Name name : matches) {
+                if(score + name.distance <= search.bound())
+                    walk(name.node, depth + 1, score + name.distance, search);
+            }
+        }
+        if(node.dynamic != null)
+            walk(node.dynamic, depth + 1, score, search);
+    }
+
+    private void find(Name root, String token, int tolerance, List<Name> matches) {
+        int[] first = row(0, token.length());
+        for(int j=0; j<=token.length(); j++)
+            first[j] = j;
+        find(root, token, tolerance, 1, matches);
+    }
+
+    /**
+     * Computes the row of the Levenshtein matrix for every child of the trie node from the row of the node.
+     * Only the band of cells within the tolerance around the diagonal is computed, the cells next to the band
+     * are set to a value above the tolerance for the following row.
+     */
+    private void find(Name name, String token, int tolerance, int depth, List<Name> matches) {
+        int length = token.length();
+        int from = Math.max(1, depth - tolerance);
+        int to = Math.min(length, depth + tolerance);
+        if(from > to)
+            return;
+        int[] previous = rows[depth - 1];
+        int[] current = row(depth, length);
+        for(int k=0; k<name.size; k++) {
+            char c = name.chars[k];
+            current[from - 1] = from == 1 ? depth : tolerance + 1;
+            if(to < length)
+                current[to + 1] = tolerance + 1;
+            int min = current[from - 1];
+            for(int j=from; j<=to; j++) {
+                int cost = c == token.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                current[j] = v;
+                if(v < min)
+                    min = v;
+            }
+            Name child = name.next[k];
+            if(child.node != null && to == length && current[length] <= tolerance) {
+                child.distance = current[length];
+                matches.add(child);
+            }
+            // Every longer name is at least as far away as the smallest value of the row
+            if(min <= tolerance && child.size > 0)
+                find(child, token, tolerance, depth + 1, matches);
+        }
+    }
+
+    private int[] row(int depth, int length) {
+        if(depth >= rows.length)
+            rows = Arrays.copyOf(rows, Math.max(depth + 1, rows.length * 2));
+        int[] row = rows[depth];
+        if(row == null || row.length <= length) {
+            row = new int[Math.max(length + 1, 16)];
+            rows[depth] = row;
+        }
+        return row;
+    }
+
+    /**
+     * Adds the routes below the node for a command line that ended early, every missing segment adds to the score
+     */
+    private static void missing(Node node, int score, Search search) {
+        for(String label : node.labels.keySet())
+            search.add(label, score);
+        for(Map.Entry<String, Node> child : node.children.entrySet()) {
+            int childScore = score + child.getKey().length();
+            if(childScore <= search.bound())
+                missing(child.getValue(), childScore, search);
+        }
+        if(node.dynamic != null && score < search.bound())
+            missing(node.dynamic, score + 1, search);
+    }
+
+    private Node child(Node node, String name) {
+        Node child = node.children.get(name);
+        if(child != null)
+            return child;
+        child = new Node();
+        node.children.put(name, child);
+        if(node.names == null)
+            node.names = new Name();
+        Name current = node.names;
+        for(int i=0; i<name.length(); i++)
+            current = current.child(name.charAt(i));
+        current.node = child;
+        return child;
+    }
+
+    private static int tolerance(String token) {
+        if(token.length() <= 3)
+            return 1;
+        return token.length() <= 6 ? 2 : 3;
+    }
+
+    private static class Search {
+
+        final String[] tokens;
+        final Map<String, Integer> scores = new HashMap<>();
+        /**
+         * Lowest scores found so far in ascending order, the last one bounds the scores that can still make it into the result.
+         * A label that improves leaves its old score behind, which only makes the bound looser.
+         */
+        final int[] best;
+
+        private Search(String[] tokens, int limit) {
+            this.tokens = tokens;
+            this.best = new int[limit];
+            Arrays.fill(best, MAX_SCORE);
+        }
+
+        void add(String label, int score) {
+            Integer previous = scores.get(label);
+            if(previous != null && previous <= score)
+                return;
+            scores.put(label, score);
+            int i = best.length - 1;
+            if(score >= best[i])
+                return;
+            while (i > 0 && best[i - 1] > score) {
+                best[i] = best[i - 1];
+                i--;
+            }
+            best[i] = score;
+        }
+
+        int bound() {
+            return best[best.length - 1];
+        }
+
+    }
+
+    private static class Entry {
+
+        final Node node;
+        final String label;
+
+        private Entry(Node node, String label) {
+            this.node = node;
+            this.label = label;
+        }
+
+    }
+
+    private static class Node {
+
+        final Map<String, Node> children = new HashMap<>();
+        /**
+         * Root of the trie over the names of the static children
+         */
+        Name names;
+        Node dynamic;
+        final Map<String, Integer> labels = new TreeMap<>();
+
+    }
+
+    private static class Name {
+
+        char[] chars = new char[2];
+        Name[] next = new Name[2];
+        int size;
+        /**
+         * Node of the segment whose name ends here, null if no name ends here
+         */
+        Node node;
+        /**
+         * Distance to the token of the running search, only valid while it's in the matches of find
+         */
+        int distance;
+
+        Name child(char c) {
+            for(int i=0; i<size; i++) {
+                if(chars[i] == c)
+                    return next[i];
+            }
+            if(size == chars.length) {
+                chars = Arrays.copyOf(chars, size * 2);
+                next = Arrays.copyOf(next, size * 2);
+            }
+            Name child = new Name();
+            chars[size] = c;
+            next[size] = child;
+            size++;
+            return child;
+        }
+
+    }
+
+}
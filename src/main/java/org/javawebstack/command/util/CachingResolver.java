@@ -0,0 +1,137 @@
+package org.javawebstack.command.util;
+
+import org.javawebstack.command.router.CandidateResolver;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Wraps a resolver with a bounded LRU cache and an optional time to live.
+ * Only successful resolutions are cached, null results and exceptions are resolved again on the next call.
+ */
+public class CachingResolver implements CandidateResolver {
+
+    private final Function<String, Object> resolver;
+    private final int maxSize;
+    private final long ttl;
+    private final Map<String, Cached> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    /**
+     * Incremented by every invalidation, guarded by the lock of the entries. Values that have been looked up while
+     * an invalidation happened are not cached, they could be outdated.
+     */
+    private long generation;
+
+    public CachingResolver(Function<String, Object> resolver, int maxSize) {
+        this(resolver, maxSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param resolver the resolver to cache
+     * @param maxSize maximum number of cached keys, the least recently used key is evicted first
+     * @param ttl time after which a cached value is resolved again, 0 to keep values until they are evicted
+     * @param unit unit of the ttl
+     */
+    public CachingResolver(Function<String, Object> resolver, int maxSize, long ttl, TimeUnit unit) {
+        if(maxSize < 1)
+            throw new IllegalArgumentException("The cache size must be at least 1");
+        this.resolver = resolver;
+        this.maxSize = maxSize;
+        this.ttl = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                if(size() <= CachingResolver.this.maxSize)
+                    return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    public Object apply(String key) {
+        long generation;
+        synchronized (entries) {
+            generation = this.generation;
+            Cached entry = entries.get(key);
+            if(entry != null) {
+                if(ttl == 0 || System.nanoTime() - entry.created < ttl) {
+                    hits.increment();
+                    return entry.value;
+                }
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        // Resolved outside of the lock so a slow lookup doesn't block the other keys
+        Object value = resolver.apply(key);
+        if(value != null) {
+            synchronized (entries) {
+                if(generation == this.generation)
+                    entries.put(key, new Cached(value, System.nanoTime()));
+            }
+        }
+        return value;
+    }
+
+    public Collection<String> candidates(String prefix) {
+        if(resolver instanceof CandidateResolver)
+            return ((CandidateResolver) resolver).candidates(prefix);
+        return Collections.emptyList();
+    }
+
+    public void invalidate(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+            generation++;
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            generation++;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public Function<String, Object> getResolver() {
+        return resolver;
+    }
+
+    private static class Cached {
+
+        final Object value;
+        final long created;
+
+        private Cached(Object value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.javawebstack.command.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommandLineTokenizer {
+
+    /**
+     * Splits a command line into arguments like a posix shell would do it (without any expansion).
+     * Single quotes are taken literally, double quotes and unquoted text allow escaping with a backslash.
+     * @param line command line to split
+     * @return the arguments
+     */
+    public static String[] tokenize(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for(int i=0; i<line.length(); i++) {
+            char c = line.charAt(i);
+            if(quote == '\'') {
+                if(c == '\'') {
+                    quote = 0;
+                } else {
+                    sb.append(c);
+                }
+            } else if(c == '\\') {
+                if(i + 1 == line.length())
+                    throw new IllegalArgumentException("Unexpected end of line after escape character");
+                char next = line.charAt(++i);
+                if(quote == '"' && next != '"' && next != '\\')
+                    sb.append(c);
+                sb.append(next);
+                inArg = true;
+            } else if(quote == '"') {
+                if(c == '"') {
+                    quote = 0;
+                } else {
+                    sb.append(c);
+                }
+            } else if(c == '"' || c == '\'') {
+                quote = c;
+                inArg = true;
+            } else if(Character.isWhitespace(c)) {
+                if(inArg) {
+                    args.add(sb.toString());
+                    sb.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                sb.append(c);
+                inArg = true;
+            }
+        }
+        if(quote != 0)
+            throw new IllegalArgumentException("Unterminated quote in command line");
+        if(inArg)
+            args.add(sb.toString());
+        return args.toArray(new String[0]);
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.javawebstack.command.util;
+
+/**
+ * Generates shell completion scripts that ask the program for the candidates through the completion command,
+ * see CLI.completionCommand. The program has to be on the PATH under the given name.
+ */
+public class CompletionScripts {
+
+    public static final String DEFAULT_COMMAND = "__complete";
+
+    public static String bash(String program) {
+        return bash(program, DEFAULT_COMMAND);
+    }
+
+    public static String bash(String program, String command) {
+        String function = "_" + identifier(program) + "_complete";
+        return function + "() {\n" +
+                "    local IFS=$'\\n'\n" +
+                "    COMPREPLY=($(" + quote(program) + " " + quote(command) + " \"$((COMP_CWORD - 1))\" \"${COMP_WORDS[@]:1}\" 2>/dev/null))\n" +
+                "}\n" +
+                "complete -o default -F " + function + " " + quote(program) + "\n";
+    }
+
+    public static String zsh(String program) {
+        return zsh(program, DEFAULT_COMMAND);
+    }
+
+    public static String zsh(String program, String command) {
+        String function = "_" + identifier(program);
+        return "#compdef " + program + "\n" +
+                function + "() {\n" +
+                "    local -a candidates\n" +
+                "    candidates=(${(f)\"$(" + quote(program) + " " + quote(command) + " \"$((CURRENT - 2))\" \"${(@)words[2,-1]}\" 2>/dev/null)\"})\n" +
+                "    compadd -a candidates\n" +
+                "}\n" +
+                "compdef " + function + " " + quote(program) + "\n";
+    }
+
+    public static String fish(String program) {
+        return fish(program, DEFAULT_COMMAND);
+    }
+
+    public static String fish(String program, String command) {
+        String function = "__" + identifier(program) + "_complete";
+        return "function " + function + "\n" +
+                "    set -l words (commandline -opc)\n" +
+                "    set -e words[1]\n" +
+                "    " + quote(program) + " " + quote(command) + " (count $words) $words (commandline -ct) 2>/dev/null\n" +
+                "end\n" +
+                "complete -c " + quote(program) + " -f -a '(" + function + ")'\n";
+    }
+
+    private static String identifier(String program) {
+        StringBuilder sb = new StringBuilder(program.length());
+        for(int i=0; i<program.length(); i++) {
+            char c = program.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '_' ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private static String quote(String s) {
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if(!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.' && c != '/')
+                return "'" + s.replace("'", "'\\''") + "'";
+        }
+        return s;
+    }
+
+}
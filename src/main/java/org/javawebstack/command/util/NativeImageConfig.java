@@ -0,0 +1,254 @@
+package org.javawebstack.command.util;
+
+import org.javawebstack.command.CLI;
+import org.javawebstack.command.bind.CommandIndex;
+import org.javawebstack.command.bind.CommandRouteBinder;
+import org.javawebstack.command.bind.annotation.Command;
+import org.javawebstack.command.bind.annotation.CommandPrefix;
+import org.javawebstack.command.bind.annotation.With;
+import org.javawebstack.command.bind.annotation.param.Arg;
+import org.javawebstack.command.bind.annotation.param.Attrib;
+import org.javawebstack.command.bind.annotation.param.Param;
+import org.javawebstack.command.router.*;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Collects everything the CLI accesses through reflection from its bound controllers and routes and writes it as
+ * GraalVM native-image configuration (reflect-config.json, resource-config.json) and as an AppCDS class list.
+ * The controllers have to be found through the CommandIndex for native images, the classpath scan doesn't work there.
+ */
+public class NativeImageConfig {
+
+    public static final String REFLECT_CONFIG = "reflect-config.json";
+    public static final String RESOURCE_CONFIG = "resource-config.json";
+    public static final String CLASS_LIST = "classlist";
+
+    private static final Class<?>[] ANNOTATIONS = { Command.class, CommandPrefix.class, With.class, Arg.class, Param.class, Attrib.class };
+
+    /**
+     * Reflection entries by class name, the value tells whether all declared methods are accessed
+     */
+    private final Map<String, Boolean> reflected = new TreeMap<>();
+    private final Set<String> constructed = new TreeSet<>();
+    private final Set<String> classes = new TreeSet<>();
+    private final ClassLoader classLoader;
+
+    public NativeImageConfig(CLI cli) {
+        this(cli, cli.getClass().getClassLoader());
+    }
+
+    /**
+     * @param classLoader class loader to load the controllers and parameter types with
+     */
+    public NativeImageConfig(CLI cli, ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        for(CommandIndex.Controller controller : cli.getBoundControllers())
+            addController(controller);
+        for(CommandRoute route : cli.getRoutes())
+            addRoute(route);
+        for(Function<String, Object> resolver : cli.getResolvers().values())
+            addResolver(resolver);
+        cli.getAutoInjectors().forEach(this::addInstance);
+        for(Class<?> annotation : ANNOTATIONS)
+            addReflected(annotation.getName(), true);
+        // The parameter filters of bound methods are looked up by name
+        addReflected(CommandRouteBinder.class.getName() + "$BindMapper", true);
+    }
+
+    private void addController(CommandIndex.Controller controller) {
+        Class<?> type = load(controller.getClassName());
+        if(type == null) {
+            addReflected(controller.getClassName(), true);
+            constructed.add(controller.getClassName());
+        } else {
+            for(Class<?> t = type; t != null && t != Object.class; t = t.getSuperclass())
+                addReflected(t.getName(), true);
+            if(hasDefaultConstructor(type))
+                constructed.add(type.getName());
+        }
+        for(String supertype : controller.getSupertypes())
+            classes.add(supertype);
+        for(CommandIndex.CommandMethod method : controller.getMethods()) {
+            addReflected(method.getDeclaringClass(), true);
+            for(String parameterType : method.getParameterTypes())
+                addType(parameterType);
+        }
+    }
+
+    private void addRoute(CommandRoute route) {
+        addInstance(route.getHandler());
+        route.getBeforeMiddlewares().forEach(this::addInstance);
+        route.getAfterMiddlewares().forEach(this::addInstance);
+        for(RouteSegment segment : route.getSegments())
+            addResolver(segment.getResolver());
+        for(RouteArgument argument : route.getArguments())
+            addResolver(argument.getResolver());
+        for(RouteOption option : route.getOptions()) {
+            for(RouteOptionParameter parameter : option.getParameters())
+                addResolver(parameter.getResolver());
+        }
+    }
+
+    private void addResolver(Function<String, Object> resolver) {
+        if(resolver instanceof CachingResolver)
+            addResolver(((CachingResolver) resolver).getResolver());
+        addInstance(resolver);
+    }
+
+    /**
+     * Adds the class of a handler, resolver or injector to the class list. Lambdas are replaced by the class that
+     * declares them, their own classes are generated at runtime (or at image build time).
+     */
+    private void addInstance(Object instance) {
+        if(instance == null)
+            return;
+        String name = instance.getClass().getName();
+        int lambda = name.indexOf("$$Lambda");
+        classes.add(lambda == -1 ? name : name.substring(0, lambda));
+    }
+
+    private void addType(String name) {
+        while (name.startsWith("["))
+            name = name.substring(1);
+        if(name.length() == 1)
+            return;
+        if(name.startsWith("L") && name.endsWith(";"))
+            name = name.substring(1, name.length() - 1);
+        if(!name.contains(".") && load(name) == null)
+            return;
+        addReflected(name, false);
+    }
+
+    private void addReflected(String name, boolean allDeclaredMethods) {
+        reflected.merge(name, allDeclaredMethods, Boolean::logicalOr);
+        classes.add(name);
+    }
+
+    private Class<?> load(String name) {
+        try {
+            return Class.forName(name, false, classLoader);
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    private static boolean hasDefaultConstructor(Class<?> type) {
+        try {
+            type.getDeclaredConstructor();
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    public void writeReflectConfig(Writer writer) throws IOException {
+        writer.write("[");
+        boolean first = true;
+        for(Map.Entry<String, Boolean> entry : reflected.entrySet()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("  {\"name\": " + json(entry.getKey()));
+            if(entry.getValue())
+                writer.write(", \"queryAllDeclaredMethods\": true, \"allDeclaredMethods\": true");
+            if(constructed.contains(entry.getKey()))
+                writer.write(", \"methods\": [{\"name\": \"<init>\", \"parameterTypes\": []}]");
+            writer.write("}");
+        }
+        writer.write("\n]\n");
+    }
+
+    public void writeResourceConfig(Writer writer) throws IOException {
+        writer.write("{\n");
+        writer.write("  \"resources\": {\"includes\": [{\"pattern\": " + json("\\Q" + CommandIndex.RESOURCE + "\\E") + "}]},\n");
+        writer.write("  \"bundles\": []\n");
+        writer.write("}\n");
+    }
+
+    /**
+     * Writes the class list for -XX:SharedClassListFile, it contains the classes of this library and all collected classes
+     */
+    public void writeClassList(Writer writer) throws IOException {
+        Set<String> names = new TreeSet<>(libraryClasses());
+        names.addAll(classes);
+        for(String name : names)
+            writer.write(name.replace('.', '/') + "\n");
+    }
+
+    /**
+     * Writes reflect-config.json, resource-config.json and classlist into the directory
+     */
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(REFLECT_CONFIG), StandardCharsets.UTF_8)) {
+            writeReflectConfig(writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(RESOURCE_CONFIG), StandardCharsets.UTF_8)) {
+            writeResourceConfig(writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(CLASS_LIST), StandardCharsets.UTF_8)) {
+            writeClassList(writer);
+        }
+    }
+
+    public Set<String> getReflectedClasses() {
+        return Collections.unmodifiableSet(reflected.keySet());
+    }
+
+    private static Set<String> libraryClasses() throws IOException {
+        Set<String> names = new TreeSet<>();
+        URL location = CLI.class.getProtectionDomain().getCodeSource() != null ? CLI.class.getProtectionDomain().getCodeSource().getLocation() : null;
+        if(location == null)
+            return names;
+        Path path;
+        try {
+            path = Paths.get(location.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return names;
+        }
+        if(Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.walk(path)) {
+                files.forEach(file -> addLibraryClass(names, path.relativize(file).toString().replace(File.separatorChar, '/')));
+            }
+        } else if(Files.isRegularFile(path)) {
+            try (JarFile jar = new JarFile(path.toFile())) {
+                for(Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); )
+                    addLibraryClass(names, entries.nextElement().getName());
+            }
+        }
+        return names;
+    }
+
+    private static void addLibraryClass(Set<String> names, String file) {
+        if(!file.startsWith("org/javawebstack/command/") || !file.endsWith(".class"))
+            return;
+        names.add(file.substring(0, file.length() - 6).replace('/', '.'));
+    }
+
+    private static String json(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if(c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+}
@@ -1,70 +1,39 @@
 package org.javawebstack.command.util;
 
 import org.javawebstack.command.router.CommandRoute;
+import org.javawebstack.command.router.RouteSegment;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
-import java.util.stream.Stream;
 
+/**
+ * A declaration is a chain of parsed lines, e.g. a prefix followed by a command. Parsed lines are immutable and
+ * memoized, so identical declaration strings are only parsed once and clones share the chain instead of copying it.
+ */
 public class SimpleCommandDeclaration {
 
-    List<Segment> segments = new ArrayList<>();
-    List<Argument> arguments = new ArrayList<>();
-    List<Option> options = new ArrayList<>();
+    /**
+     * Maximum number of memoized lines, declarations are usually constants so this is only a safety net
+     */
+    private static final int CACHE_LIMIT = 8192;
+    private static final Map<String, Line> CACHE = new ConcurrentHashMap<>();
+
+    private Chain chain;
 
     public void parse(String line, boolean prefix) {
-        String[] args = Stream.of(line.split(" ")).map(String::trim).filter(s -> !s.isEmpty()).toArray(String[]::new);
-        boolean argsStarted = false;
-        boolean optionsStarted = false;
-        for(int i=0; i<args.length; i++) {
-            String a = args[i];
-            if(a.startsWith("{")) {
-                if(!a.endsWith("}"))
-                    throw new IllegalArgumentException("Invalid dynamic command: " + a);
-                if(argsStarted || optionsStarted)
-                    throw new IllegalArgumentException("Commands must be specified before arguments and options");
-                String resolver = "string";
-                if(a.contains(":")) {
-                    String[] spl = a.split(":", 2);
-                    a = spl.length == 2 ? spl[1] : "";
-                    resolver = spl[1];
-                }
-                if(a.length() == 0)
-                    throw new IllegalArgumentException("Name of dynamic command can not be empty");
-                segments.add(new Segment(a, resolver));
-            } if(a.startsWith("<") || a.startsWith("[")) {
-                boolean required = a.charAt(0) == '<';
-                argsStarted = true;
-                if(!a.endsWith(required ? ">" : "]"))
-                    throw new IllegalArgumentException("Invalid argument: " + a);
-                if(prefix)
-                    throw new IllegalArgumentException("Arguments are not allowed in prefixes");
-                if(optionsStarted)
-                    throw new IllegalArgumentException("Arguments must be specified before options");
-                parseArg(a);
-            } else if(a.length() >= 2 && a.charAt(0) == '-' && a.charAt(1) != '-') {
-                a = a.substring(1);
-                optionsStarted = true;
-                argsStarted = true;
-                while (a.length() > 1 && Character.isAlphabetic(a.charAt(1))) {
-                    String on = String.valueOf(a.charAt(0));
-                    a = a.substring(1);
-                    options.add(new Option(on, false, false, new ArrayList<>()));
-                }
-                i = parseOption(args, i, a);
-            } else if(a.length() >= 3 && a.startsWith("--") && a.charAt(2) != '-') {
-                a = a.substring(2);
-                optionsStarted = true;
-                argsStarted = true;
-                i = parseOption(args, i, a);
-            } else {
-                if(argsStarted || optionsStarted)
-                    throw new IllegalArgumentException("Commands must be specified before arguments and options");
-                segments.add(new Segment(a, null));
-            }
+        Line parsed = CACHE.get(line);
+        if(parsed == null) {
+            parsed = new Line(line);
+            if(CACHE.size() < CACHE_LIMIT)
+                CACHE.put(line, parsed);
         }
+        if(prefix && parsed.arguments.size() > 0)
+            throw new IllegalArgumentException("Arguments are not allowed in prefixes");
+        chain = new Chain(parsed, chain);
     }
 
     public CommandRoute create(Map<String, Function<String, Object>> resolvers) {
@@ -74,130 +43,266 @@ public class SimpleCommandDeclaration {
     }
 
     public void apply(CommandRoute route, Map<String, Function<String, Object>> resolvers) {
-        for(Segment s : segments) {
-            if(s.resolver == null) {
-                route.segment(s.name);
-            } else {
-                if(!resolvers.containsKey(s.resolver))
-                    throw new IllegalArgumentException("Unknown resolver " + s.resolver);
-                route.dynamicSegment(s.name, resolvers.get(s.resolver));
+        Line[] lines = lines();
+        List<RouteSegment> segments = new ArrayList<>();
+        for(Line line : lines) {
+            for(Segment s : line.segments) {
+                if(s.route != null) {
+                    segments.add(s.route);
+                    continue;
+                }
+                Function<String, Object> resolver = CommandRoute.IDENTITY_RESOLVER;
+                if(s.resolver != null) {
+                    resolver = resolvers.get(s.resolver);
+                    if(resolver == null)
+                        throw new IllegalArgumentException("Unknown resolver " + s.resolver);
+                }
+                segments.add(new RouteSegment(s.name, resolver));
             }
         }
-        for(Argument a : arguments) {
-            Function<String, Object> resolver = null;
-            if(a.resolver != null) {
-                resolver = resolvers.get(a.resolver);
-                if(resolver == null)
-                    throw new IllegalArgumentException("Unknown resolver " + a.resolver);
-            }
-            if(a.vararg) {
-                route.varArg(a.name, a.required, resolver);
-            } else {
-                route.arg(a.name, a.required, resolver);
+        route.segments(segments);
+        for(Line line : lines) {
+            for(Argument a : line.arguments) {
+                Function<String, Object> resolver = null;
+                if(a.resolver != null) {
+                    resolver = resolvers.get(a.resolver);
+                    if(resolver == null)
+                        throw new IllegalArgumentException("Unknown resolver " + a.resolver);
+                }
+                if(a.streaming) {
+                    route.streamVarArg(a.name, a.required, resolver);
+                } else if(a.vararg) {
+                    route.varArg(a.name, a.required, resolver);
+                } else {
+                    route.arg(a.name, a.required, resolver);
+                }
             }
         }
-        for(Option option : options) {
-            route.option(option.name, option.required, option.repeatable, o -> {
-                for(Option.Param p : option.params) {
-                    Function<String, Object> resolver = null;
-                    if(p.resolver != null) {
-                        resolver = resolvers.get(p.resolver);
-                        if(resolver == null)
-                            throw new IllegalArgumentException("Unknown resolver " + p.resolver);
+        for(Line line : lines) {
+            for(Option option : line.options) {
+                route.option(option.name, option.required, option.repeatable, o -> {
+                    for(Option.Param p : option.params) {
+                        Function<String, Object> resolver = null;
+                        if(p.resolver != null) {
+                            resolver = resolvers.get(p.resolver);
+                            if(resolver == null)
+                                throw new IllegalArgumentException("Unknown resolver " + p.resolver);
+                        }
+                        o.param(p.name, resolver);
                     }
-                    o.param(p.name, resolver);
-                }
-            });
+                });
+            }
         }
     }
 
-    private void parseArg(String a) {
-        boolean vararg = false;
-        boolean required = a.charAt(0) == '<';
-        a = a.substring(1, a.length()-1);
-        String resolver = null;
-        if(a.startsWith("...")) {
-            vararg = true;
-            a = a.substring(3);
-        }
-        if(!vararg && a.endsWith("...")) {
-            vararg = true;
-            a = a.substring(0, a.length()-3);
-        }
-        if(a.contains(":")) {
-            String[] spl = a.split(":", 2);
-            a = spl.length == 2 ? spl[1] : "";
-            resolver = spl[0];
-        }
-        if(!vararg && a.startsWith("...")) {
-            vararg = true;
-            a = a.substring(3);
-        }
-        if(a.length() == 0)
-            throw new IllegalArgumentException("Argument name can not be empty");
-        arguments.add(new Argument(a, required, vararg, resolver));
+    private Line[] lines() {
+        Line[] lines = new Line[chain == null ? 0 : chain.length];
+        for(Chain c = chain; c != null; c = c.previous)
+            lines[c.length - 1] = c.line;
+        return lines;
     }
 
-    private int parseOption(String[] args, int i, String a) {
-        boolean required = false;
-        boolean repeatable = false;
-        if(a.endsWith("!")) {
-            required = true;
-            a = a.substring(0, a.length()-1);
+    /**
+     * Clones share the parsed lines, parsing further lines into the clone doesn't affect this declaration
+     */
+    public SimpleCommandDeclaration clone() {
+        SimpleCommandDeclaration clone = new SimpleCommandDeclaration();
+        clone.chain = chain;
+        return clone;
+    }
+
+    private static class Chain {
+
+        final Line line;
+        final Chain previous;
+        final int length;
+
+        private Chain(Line line, Chain previous) {
+            this.line = line;
+            this.previous = previous;
+            this.length = previous == null ? 1 : previous.length + 1;
         }
-        if(a.endsWith("[]")) {
-            repeatable = true;
-            a = a.substring(0, a.length()-2);
+
+    }
+
+    private static class Line {
+
+        final List<Segment> segments;
+        final List<Argument> arguments;
+        final List<Option> options;
+
+        private Line(String line) {
+            List<Segment> segments = new ArrayList<>();
+            List<Argument> arguments = new ArrayList<>();
+            List<Option> options = new ArrayList<>();
+            String[] args = tokenize(line);
+            boolean argsStarted = false;
+            boolean optionsStarted = false;
+            for(int i=0; i<args.length; i++) {
+                String a = args[i];
+                if(a.startsWith("{")) {
+                    if(!a.endsWith("}"))
+                        throw new IllegalArgumentException("Invalid dynamic command: " + a);
+                    if(argsStarted || optionsStarted)
+                        throw new IllegalArgumentException("Commands must be specified before arguments and options");
+                    String name = a.substring(1, a.length()-1);
+                    String resolver = null;
+                    int colon = name.indexOf(':');
+                    if(colon != -1) {
+                        resolver = name.substring(0, colon);
+                        name = name.substring(colon + 1);
+                    }
+                    if(name.length() == 0)
+                        throw new IllegalArgumentException("Name of dynamic command can not be empty");
+                    segments.add(new Segment(name, resolver, true));
+                } else if(a.startsWith("<") || a.startsWith("[")) {
+                    boolean required = a.charAt(0) == '<';
+                    argsStarted = true;
+                    if(!a.endsWith(required ? ">" : "]"))
+                        throw new IllegalArgumentException("Invalid argument: " + a);
+                    if(optionsStarted)
+                        throw new IllegalArgumentException("Arguments must be specified before options");
+                    arguments.add(parseArg(a));
+                } else if(a.length() >= 2 && a.charAt(0) == '-' && a.charAt(1) != '-') {
+                    int start = 1;
+                    optionsStarted = true;
+                    argsStarted = true;
+                    while (a.length() - start > 1 && Character.isAlphabetic(a.charAt(start + 1))) {
+                        options.add(new Option(String.valueOf(a.charAt(start)), false, false, Collections.emptyList()));
+                        start++;
+                    }
+                    i = parseOption(args, i, a.substring(start), options);
+                } else if(a.length() >= 3 && a.startsWith("--") && a.charAt(2) != '-') {
+                    optionsStarted = true;
+                    argsStarted = true;
+                    i = parseOption(args, i, a.substring(2), options);
+                } else {
+                    if(argsStarted || optionsStarted)
+                        throw new IllegalArgumentException("Commands must be specified before arguments and options");
+                    segments.add(new Segment(a, null, false));
+                }
+            }
+            this.segments = Collections.unmodifiableList(segments);
+            this.arguments = Collections.unmodifiableList(arguments);
+            this.options = Collections.unmodifiableList(options);
         }
-        if(!required && a.endsWith("!")) {
-            required = true;
-            a = a.substring(0, a.length()-1);
+
+        private static String[] tokenize(String line) {
+            List<String> tokens = new ArrayList<>();
+            int start = 0;
+            while (start <= line.length()) {
+                int end = line.indexOf(' ', start);
+                if(end == -1)
+                    end = line.length();
+                String token = line.substring(start, end).trim();
+                if(!token.isEmpty())
+                    tokens.add(token);
+                start = end + 1;
+            }
+            return tokens.toArray(new String[0]);
         }
-        String name = a;
-        List<Option.Param> params = new ArrayList<>();
-        while (i + 1 < args.length && args[i+1].startsWith("{")) {
-            i++;
-            a = args[i];
-            if(!a.endsWith("}"))
-                throw new IllegalArgumentException("Invalid option parameter (option: " + name + "}: " + a);
-            a = a.substring(1, a.length()-1);
+
+        private static Argument parseArg(String a) {
+            boolean vararg = false;
+            boolean required = a.charAt(0) == '<';
+            int start = 1;
+            int end = a.length() - 1;
             String resolver = null;
-            if(a.contains(":")) {
-                String[] spl = a.split(":", 2);
-                a = spl.length == 2 ? spl[1] : "";
-                resolver = spl[0];
+            // A trailing * declares a streaming vararg, its values are resolved while the handler consumes them
+            boolean streaming = end > start && a.charAt(end - 1) == '*';
+            if(streaming)
+                end--;
+            if(a.startsWith("...", start)) {
+                vararg = true;
+                start += 3;
+            }
+            if(!vararg && end - start >= 3 && a.startsWith("...", end - 3)) {
+                vararg = true;
+                end -= 3;
+            }
+            int colon = a.indexOf(':', start);
+            if(colon != -1 && colon < end) {
+                resolver = a.substring(start, colon);
+                start = colon + 1;
             }
-            if(a.length() == 0)
-                throw new IllegalArgumentException("Option parameter name can not be empty");
-            params.add(new Option.Param(a, resolver));
+            if(!vararg && a.startsWith("...", start) && start + 3 <= end) {
+                vararg = true;
+                start += 3;
+            }
+            if(end <= start)
+                throw new IllegalArgumentException("Argument name can not be empty");
+            return new Argument(a.substring(start, end), required, vararg || streaming, streaming, resolver);
         }
-        options.add(new Option(name, required, repeatable, params));
-        return i;
+
+        private static int parseOption(String[] args, int i, String a, List<Option> options) {
+            boolean required = false;
+            boolean repeatable = false;
+            if(a.endsWith("!")) {
+                required = true;
+                a = a.substring(0, a.length()-1);
+            }
+            if(a.endsWith("[]")) {
+                repeatable = true;
+                a = a.substring(0, a.length()-2);
+            }
+            if(!required && a.endsWith("!")) {
+                required = true;
+                a = a.substring(0, a.length()-1);
+            }
+            String name = a;
+            List<Option.Param> params = new ArrayList<>();
+            while (i + 1 < args.length && args[i+1].startsWith("{")) {
+                i++;
+                a = args[i];
+                if(!a.endsWith("}"))
+                    throw new IllegalArgumentException("Invalid option parameter (option: " + name + "}: " + a);
+                a = a.substring(1, a.length()-1);
+                String resolver = null;
+                int colon = a.indexOf(':');
+                if(colon != -1) {
+                    resolver = a.substring(0, colon);
+                    a = a.substring(colon + 1);
+                }
+                if(a.length() == 0)
+                    throw new IllegalArgumentException("Option parameter name can not be empty");
+                params.add(new Option.Param(a, resolver));
+            }
+            options.add(new Option(name, required, repeatable, params.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(params)));
+            return i;
+        }
+
     }
 
     private static class Segment {
 
-        String name;
-        String resolver;
+        final String name;
+        final String resolver;
+        /**
+         * Shared route segment of static segments, null for dynamic ones as their resolver depends on the CLI
+         */
+        final RouteSegment route;
 
-        private Segment(String name, String resolver) {
+        private Segment(String name, String resolver, boolean dynamic) {
             this.name = name;
             this.resolver = resolver;
+            this.route = dynamic ? null : new RouteSegment(name);
         }
 
     }
 
     private static class Argument {
 
-        String name;
-        boolean required;
-        boolean vararg;
-        String resolver;
+        final String name;
+        final boolean required;
+        final boolean vararg;
+        final boolean streaming;
+        final String resolver;
 
-        private Argument(String name, boolean required, boolean vararg, String resolver) {
+        private Argument(String name, boolean required, boolean vararg, boolean streaming, String resolver) {
             this.name = name;
             this.required = required;
             this.vararg = vararg;
+            this.streaming = streaming;
             this.resolver = resolver;
         }
 
@@ -205,10 +310,10 @@ public class SimpleCommandDeclaration {
 
     private static class Option {
 
-        String name;
-        boolean required;
-        boolean repeatable;
-        List<Param> params;
+        final String name;
+        final boolean required;
+        final boolean repeatable;
+        final List<Param> params;
 
         private Option(String name, boolean required, boolean repeatable, List<Param> params) {
             this.name = name;
@@ -219,8 +324,8 @@ public class SimpleCommandDeclaration {
 
         private static class Param {
 
-            String name;
-            String resolver;
+            final String name;
+            final String resolver;
 
             private Param(String name, String resolver) {
                 this.name = name;
@@ -231,12 +336,4 @@ public class SimpleCommandDeclaration {
 
     }
 
-    public SimpleCommandDeclaration clone() {
-        SimpleCommandDeclaration clone = new SimpleCommandDeclaration();
-        clone.segments = new ArrayList<>(segments);
-        clone.arguments = new ArrayList<>(arguments);
-        clone.options = new ArrayList<>(clone.options);
-        return clone;
-    }
-
 }
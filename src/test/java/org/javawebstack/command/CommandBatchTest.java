@@ -0,0 +1,100 @@
+package org.javawebstack.command;
+
+import org.javawebstack.command.io.BufferedOutput;
+import org.javawebstack.command.io.DefaultInput;
+import org.javawebstack.command.io.DefaultOutput;
+import org.javawebstack.command.io.RecordingOutput;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommandBatchTest {
+
+    @Test
+    public void returnsResultsInInputOrder() {
+        List<CommandResult> results = batch().execute(commands(8));
+
+        assertEquals(8, results.size());
+        for(int i=0; i<8; i++) {
+            assertEquals(String.valueOf(i), results.get(i).getArgs()[1]);
+            assertTrue(results.get(i).isSuccess());
+        }
+    }
+
+    @Test
+    public void replaysSharedOutputInInputOrderAndFlushes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedOutput shared = new BufferedOutput(out, new ByteArrayOutputStream());
+
+        List<CommandResult> results = batch().sharedOutput(shared).execute(commands(8));
+
+        StringBuilder expected = new StringBuilder();
+        for(int i=0; i<8; i++) {
+            expected.append("echo ").append(i).append('\n');
+            assertNull(results.get(i).getOutput());
+        }
+        assertEquals(expected.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void keepsOutputsIsolatedWithoutSharedOutput() {
+        List<CommandResult> results = batch().execute(commands(4));
+
+        for(int i=0; i<4; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ((RecordingOutput) results.get(i).getOutput()).replay(new DefaultOutput(new PrintStream(out), new PrintStream(new ByteArrayOutputStream())));
+            assertEquals("echo " + i + System.lineSeparator(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void containsFailingCommands() {
+        List<String[]> commands = new ArrayList<>();
+        commands.add(new String[] { "fail" });
+        commands.add(new String[] { "echo", "1" });
+        commands.add(new String[] { "unknown" });
+
+        List<CommandResult> results = batch().execute(commands);
+
+        assertTrue(results.get(0).isMatched());
+        assertFalse(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertFalse(results.get(2).isMatched());
+    }
+
+    private static CommandBatch batch() {
+        CLI cli = new CLI();
+        cli.route("echo <value>", c -> {
+            // Later commands finish first, so the order has to be restored
+            sleep(20 - Integer.parseInt(c.arg("value")) * 2);
+            c.print("echo " + c.arg("value"));
+        });
+        cli.route("fail", c -> {
+            throw new IllegalStateException("broken");
+        });
+        return cli.batch().parallelism(4).input(new DefaultInput(new ByteArrayInputStream(new byte[0])));
+    }
+
+    private static List<String[]> commands(int count) {
+        List<String[]> commands = new ArrayList<>();
+        for(int i=0; i<count; i++)
+            commands.add(new String[] { "echo", String.valueOf(i) });
+        return commands;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(Math.max(millis, 0));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.javawebstack.command;
+
+import org.javawebstack.command.io.DefaultInput;
+import org.javawebstack.command.io.DefaultOutput;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommandSessionTest {
+
+    @Test
+    public void continuesAfterRuntimeException() {
+        List<String> names = new ArrayList<>();
+        CLI cli = new CLI();
+        cli.route("greet --name {value}", c -> names.add(c.option("name", "value")));
+        cli.route("fail", c -> {
+            throw new IllegalStateException("broken");
+        });
+
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        CommandSession session = session(cli, "greet --name\nfail\ngreet --name bob\n", err);
+
+        assertFalse(session.run());
+        assertEquals(Arrays.asList("bob"), names);
+        assertEquals(3, session.getExecuted());
+        assertEquals(2, session.getFailed());
+        assertTrue(new String(err.toByteArray(), StandardCharsets.UTF_8).contains("is missing the required parameter"));
+    }
+
+    @Test
+    public void keepsAttributesAcrossCommands() {
+        CLI cli = new CLI();
+        cli.route("set <value>", c -> c.getSession().attrib("value", c.arg("value")));
+        List<Object> values = new ArrayList<>();
+        cli.route("get", c -> values.add(c.attrib("value")));
+
+        CommandSession session = session(cli, "set a\n# comment\n\nget\n", new ByteArrayOutputStream());
+
+        assertTrue(session.run());
+        assertEquals(Arrays.asList((Object) "a"), values);
+        assertEquals(2, session.getExecuted());
+    }
+
+    private static CommandSession session(CLI cli, String lines, ByteArrayOutputStream err) {
+        DefaultInput input = new DefaultInput(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)));
+        DefaultOutput output = new DefaultOutput(new PrintStream(new ByteArrayOutputStream()), new PrintStream(err));
+        return cli.session(input, output);
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.javawebstack.command.bind;
+
+import org.javawebstack.command.CLI;
+import org.javawebstack.command.CommandContext;
+import org.javawebstack.command.bind.annotation.Command;
+import org.javawebstack.command.bind.annotation.param.Arg;
+import org.javawebstack.command.io.DefaultInput;
+import org.javawebstack.command.io.RecordingOutput;
+import org.javawebstack.command.router.CommandRoute;
+import org.javawebstack.command.router.RouteArgument;
+import org.javawebstack.command.router.RouteOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class RouteSnapshotTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("routes", ".snapshot");
+        Files.delete(file);
+        UploadController.calls.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void restoresWrittenRoutes() throws IOException {
+        newCli().controller(new UploadController()).writeRouteSnapshot(file);
+
+        RouteSnapshot snapshot = RouteSnapshot.read(file);
+        assertNotNull(snapshot);
+        assertEquals(1, snapshot.size());
+
+        CLI cli = newCli();
+        assertTrue(cli.loadRouteSnapshot(file));
+        assertEquals(1, cli.getRoutes().size());
+        CommandRoute route = cli.getRoutes().get(0);
+        assertEquals("upload", route.getSegments().get(0).getName());
+
+        RouteArgument name = route.getArguments().get(0);
+        assertEquals("name", name.getName());
+        assertTrue(name.isRequired());
+        assertFalse(name.isVarArg());
+        RouteArgument sizes = route.getArguments().get(1);
+        assertEquals("sizes", sizes.getName());
+        assertFalse(sizes.isRequired());
+        assertTrue(sizes.isVarArg());
+        assertTrue(sizes.isStreaming());
+
+        RouteOption tag = option(route, "tag");
+        assertTrue(tag.isRepeatable());
+        assertEquals("value", tag.getParameters().get(0).getName());
+        assertFalse(option(route, "force").isRepeatable());
+
+        String[] args = { "upload", "report", "1", "2", "3", "--tag", "a", "--tag", "b", "--force" };
+        assertTrue(cli.execute(args, new DefaultInput(new ByteArrayInputStream(new byte[0])), new RecordingOutput()));
+        assertEquals(Arrays.asList("report [1, 2, 3] [a, b] true"), UploadController.calls);
+    }
+
+    @Test
+    public void ignoresSnapshotOfOtherClasspath() throws IOException {
+        newCli().controller(new UploadController()).writeRouteSnapshot(file);
+        assertNotNull(RouteSnapshot.read(file));
+
+        // The classpath fingerprint follows the magic and the version
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(8);
+            long fingerprint = raf.readLong();
+            raf.seek(8);
+            raf.writeLong(~fingerprint);
+        }
+
+        assertNull(RouteSnapshot.read(file));
+        CLI cli = newCli();
+        assertFalse(cli.loadRouteSnapshot(file));
+        assertTrue(cli.getRoutes().isEmpty());
+    }
+
+    @Test
+    public void ignoresMissingSnapshot() throws IOException {
+        assertNull(RouteSnapshot.read(file));
+        assertFalse(newCli().loadRouteSnapshot(file));
+    }
+
+    private static CLI newCli() {
+        return new CLI().resolver("int", Integer::parseInt);
+    }
+
+    private static RouteOption option(CommandRoute route, String name) {
+        for(RouteOption option : route.getOptions()) {
+            if(option.getName().equals(name))
+                return option;
+        }
+        throw new AssertionError("Option '" + name + "' is missing");
+    }
+
+    public static class UploadController {
+
+        static final List<String> calls = new ArrayList<>();
+
+        @Command("upload <name> [int:sizes...*] --tag[] {value} --force")
+        public void upload(@Arg("name") String name, CommandContext context) {
+            List<Object> sizes = context.varArgStream("sizes").collect(Collectors.toList());
+            List<Object> tags = new ArrayList<>();
+            for(int i=0; i<context.optionCount("tag"); i++)
+                tags.add(context.option("tag", i).value("value"));
+            calls.add(name + " " + sizes + " " + tags + " " + context.hasOption("force"));
+        }
+
+    }
+
+}
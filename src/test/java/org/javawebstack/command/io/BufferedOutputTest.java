@@ -0,0 +1,78 @@
+package org.javawebstack.command.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class BufferedOutputTest {
+
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    public void encodesLikeString() {
+        String text = "plain \u00E4\u00F6\u00FC \u20AC \uD83D\uDE00 end";
+        for(int size : new int[] { 4, 5, 7, 8192 }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BufferedOutput output = new BufferedOutput(out, new ByteArrayOutputStream(), size);
+            output.print(text);
+            output.write(text);
+            output.flush();
+            assertEquals("buffer size " + size, text + NL + text, utf8(out));
+        }
+    }
+
+    @Test
+    public void joinsPairSplitAcrossWrites() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedOutput output = new BufferedOutput(out, new ByteArrayOutputStream());
+        output.write("a\uD83D");
+        output.write("\uDE00b");
+        output.flush();
+        assertEquals("a\uD83D\uDE00b", utf8(out));
+    }
+
+    @Test
+    public void writesUnpairedHighSurrogateOnFlush() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedOutput output = new BufferedOutput(out, new ByteArrayOutputStream());
+        output.write("x\uD83D");
+        output.flush();
+        assertEquals("x?", utf8(out));
+
+        output.write("\uDE00");
+        output.flush();
+        assertEquals("x??", utf8(out));
+    }
+
+    @Test
+    public void endsUnpairedHighSurrogateBeforeLineSeparator() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedOutput output = new BufferedOutput(out, new ByteArrayOutputStream());
+        output.print("a\uD83D");
+        output.print("b");
+        output.flush();
+        assertEquals("a?" + NL + "b" + NL, utf8(out));
+    }
+
+    @Test
+    public void writerSharesBuffer() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedOutput output = new BufferedOutput(out, new ByteArrayOutputStream());
+        PrintWriter writer = output.writer();
+        output.write("a");
+        writer.print("\u00DF\uD83D\uDE00");
+        output.write("c");
+        assertEquals("", utf8(out));
+        writer.flush();
+        assertEquals("a\u00DF\uD83D\uDE00c", utf8(out));
+    }
+
+    private static String utf8(ByteArrayOutputStream out) {
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
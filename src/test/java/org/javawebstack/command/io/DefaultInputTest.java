@@ -0,0 +1,93 @@
+package org.javawebstack.command.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class DefaultInputTest {
+
+    @Test(timeout = 10000)
+    public void timedReadDoesNotWaitForBlockedReader() throws Exception {
+        QueueInputStream stream = new QueueInputStream();
+        DefaultInput input = new DefaultInput(stream);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> blocked = executor.submit(() -> input.readLine());
+            stream.awaitReader();
+
+            long start = System.nanoTime();
+            assertNull(input.readLine(100, TimeUnit.MILLISECONDS));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+            stream.add("a\nb\n");
+            assertEquals("a", blocked.get());
+            assertEquals("b", input.readLine(1, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void keepsLateLineForNextRead() throws Exception {
+        QueueInputStream stream = new QueueInputStream();
+        DefaultInput input = new DefaultInput(stream);
+
+        assertNull(input.readLine(50, TimeUnit.MILLISECONDS));
+        stream.add("late\n");
+        assertEquals("late", input.readLine(5, TimeUnit.SECONDS));
+        stream.add("next\n");
+        assertEquals("next", input.readLine());
+    }
+
+    @Test(timeout = 10000)
+    public void timedReadReturnsRestAtEnd() {
+        DefaultInput input = new DefaultInput(new ByteArrayInputStream("one\r\ntwo".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("one", input.readLine(1, TimeUnit.SECONDS));
+        assertEquals("two", input.readLine(1, TimeUnit.SECONDS));
+        assertNull(input.readLine(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Stream whose reads block until data has been added
+     */
+    private static class QueueInputStream extends InputStream {
+
+        private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        private final CountDownLatch reading = new CountDownLatch(1);
+
+        void add(String data) {
+            chunks.add(data.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void awaitReader() throws InterruptedException {
+            reading.await();
+        }
+
+        public int read() {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0];
+        }
+
+        public int read(byte[] b, int off, int len) {
+            reading.countDown();
+            byte[] chunk;
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+            // Chunks in the tests are smaller than the buffer of the input
+            System.arraycopy(chunk, 0, b, off, chunk.length);
+            return chunk.length;
+        }
+
+    }
+
+}
@@ -0,0 +1,133 @@
+package org.javawebstack.command.router;
+
+import org.javawebstack.command.CommandContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class CommandRouteTest {
+
+    @Test
+    public void keysOptionsByDeclaredName() throws CommandValidationException {
+        CommandRoute route = new CommandRoute().segment("run").repeatableOption("Tag", false, "value").flagOption("Force");
+
+        CommandContext context = validate(route, "run", "--tag", "a", "--TAG=b", "--force");
+        assertEquals(2, context.optionCount("Tag"));
+        assertEquals("a", context.option("Tag", 0).value("value"));
+        assertEquals("b", context.option("Tag", 1).value("value"));
+        assertTrue(context.hasOption("Force"));
+    }
+
+    @Test
+    public void matchesCombinedShortOptions() throws CommandValidationException {
+        CommandRoute route = new CommandRoute().segment("run").flagOption("v").flagOption("x").flagOption("q");
+
+        CommandContext context = validate(route, "run", "-vx");
+        assertTrue(context.hasOption("v"));
+        assertTrue(context.hasOption("x"));
+        assertFalse(context.hasOption("q"));
+    }
+
+    @Test(expected = CommandValidationException.class)
+    public void rejectsUnknownOption() throws CommandValidationException {
+        CommandRoute route = new CommandRoute().segment("run").flagOption("v");
+        validate(route, "run", "--verbose");
+    }
+
+    @Test
+    public void checksArgumentCounts() throws CommandValidationException {
+        CommandRoute route = new CommandRoute().segment("copy").arg("from", true).arg("to", false);
+
+        CommandContext context = validate(route, "copy", "a");
+        assertEquals("a", context.arg("from"));
+        assertEquals("b", validate(route, "copy", "a", "b").arg("to"));
+        assertInvalid(route, "copy");
+        assertInvalid(route, "copy", "a", "b", "c");
+    }
+
+    @Test
+    public void rebuildsIndexWhenChangedAfterCompile() throws CommandValidationException {
+        CommandRoute route = new CommandRoute().segment("run").flagOption("v");
+        CommandRouter router = new CommandRouter().add(route);
+        assertTrue(router.match(new String[] { "run", "-v" }).isMatched());
+
+        route.flagOption("late");
+        assertTrue(router.match(new String[] { "run", "--late" }).getContext().hasOption("late"));
+    }
+
+    @Test
+    public void matchesReentrantlyFromSegmentResolver() throws CommandValidationException {
+        CommandRoute inner = new CommandRoute().segment("lookup").arg("key", true).flagOption("q");
+        CommandRoute outer = new CommandRoute().segment("run").dynamicSegment("id", s -> {
+            // Matches on the same thread while the outer match is in the middle of the command line
+            CommandParseResult nested = inner.match(new String[] { "lookup", "-q", "k" + s });
+            return nested != null ? nested.getArguments().get(0) : null;
+        }).arg("a", true).arg("b", true).flagOption("v").option("tag", false, "value");
+
+        CommandContext context = validate(outer, "run", "-v", "7", "x", "--tag", "t", "y");
+        assertEquals("k7", context.param("id"));
+        assertEquals("x", context.arg("a"));
+        assertEquals("y", context.arg("b"));
+        assertTrue(context.hasOption("v"));
+        assertEquals("t", context.option("tag", "value"));
+    }
+
+    @Test
+    public void failedMatchDoesNotLeakIntoNextMatch() throws CommandValidationException {
+        CommandRoute route = new CommandRoute().segment("run").arg("a", true).flagOption("v");
+
+        assertNull(route.match(new String[] { "other", "-v", "x" }));
+        CommandContext context = validate(route, "run", "y");
+        assertEquals("y", context.arg("a"));
+        assertFalse(context.hasOption("v"));
+    }
+
+    @Test
+    public void matchesConcurrently() throws Exception {
+        CommandRoute route = new CommandRoute().segment("run").arg("a", true).option("tag", false, "value");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for(int t=0; t<4; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    for(int i=0; i<2000; i++) {
+                        String value = thread + ":" + i;
+                        CommandContext context = validate(route, "run", "--tag", value, value);
+                        if(!value.equals(context.arg("a")) || !value.equals(context.option("tag", "value")))
+                            return false;
+                    }
+                    return true;
+                }));
+            }
+            for(Future<Boolean> result : results)
+                assertTrue(result.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static CommandContext validate(CommandRoute route, String... args) throws CommandValidationException {
+        CommandParseResult result = route.match(args);
+        assertNotNull("No match for " + String.join(" ", args), result);
+        return route.validate(result);
+    }
+
+    private static void assertInvalid(CommandRoute route, String... args) {
+        try {
+            CommandParseResult result = route.match(args);
+            if(result != null)
+                route.validate(result);
+        } catch (CommandValidationException ex) {
+            return;
+        }
+        fail("Expected '" + String.join(" ", args) + "' to be rejected");
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.javawebstack.command.router;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommandRouterTest {
+
+    @Test
+    public void firstRegisteredRouteWinsAcrossStaticAndDynamicSiblings() throws CommandValidationException {
+        CommandRoute dynamic = new CommandRoute().segment("user").dynamicSegment("id");
+        CommandRoute me = new CommandRoute().segment("user").segment("me");
+
+        CommandRouter dynamicFirst = new CommandRouter().add(dynamic).add(me);
+        assertSame(dynamic, dynamicFirst.match(new String[] { "user", "me" }).getRoute());
+
+        CommandRouter staticFirst = new CommandRouter().add(me).add(dynamic);
+        assertSame(me, staticFirst.match(new String[] { "user", "me" }).getRoute());
+        CommandRouterResult result = staticFirst.match(new String[] { "user", "5" });
+        assertSame(dynamic, result.getRoute());
+        assertEquals("5", result.getContext().param("id"));
+    }
+
+    @Test
+    public void shorterRouteRegisteredFirstWinsOverDeeperOne() throws CommandValidationException {
+        CommandRoute withArgs = new CommandRoute().segment("user").varArg("rest", false);
+        CommandRoute show = new CommandRoute().segment("user").segment("show");
+        CommandRouter router = new CommandRouter().add(withArgs).add(show);
+
+        assertSame(withArgs, router.match(new String[] { "user", "show" }).getRoute());
+    }
+
+    @Test
+    public void matchesSegmentsIgnoringCase() throws CommandValidationException {
+        CommandRoute deploy = new CommandRoute().segment("Deploy").segment("NOW");
+        CommandRouter router = new CommandRouter().add(deploy);
+
+        assertSame(deploy, router.match(new String[] { "deploy", "now" }).getRoute());
+        assertSame(deploy, router.match(new String[] { "DEPLOY", "Now" }).getRoute());
+        assertFalse(router.match(new String[] { "deploy", "later" }).isMatched());
+    }
+
+    @Test
+    public void matchesOptionsInFrontOfSegments() throws CommandValidationException {
+        CommandRoute deploy = new CommandRoute().segment("deploy").arg("target", true).flagOption("verbose");
+        CommandRoute other = new CommandRoute().segment("status").flagOption("verbose");
+        CommandRouter router = new CommandRouter().add(other).add(deploy);
+
+        CommandRouterResult result = router.match(new String[] { "--verbose", "deploy", "prod" });
+        assertSame(deploy, result.getRoute());
+        assertTrue(result.getContext().hasOption("verbose"));
+        assertEquals("prod", result.getContext().arg("target"));
+    }
+
+    @Test
+    public void reportsNoMatch() throws CommandValidationException {
+        CommandRouter router = new CommandRouter().add(new CommandRoute().segment("deploy"));
+
+        CommandRouterResult result = router.match(new String[] { "status" });
+        assertFalse(result.isMatched());
+        assertNull(result.getRoute());
+        assertFalse(router.match(new String[0]).isMatched());
+    }
+
+    @Test
+    public void removedRoutesDontMatch() throws CommandValidationException {
+        CommandRoute deploy = new CommandRoute().segment("deploy");
+        CommandRoute status = new CommandRoute().segment("status");
+        CommandRouter router = new CommandRouter().add(deploy).add(status);
+        assertTrue(router.match(new String[] { "deploy" }).isMatched());
+
+        assertTrue(router.remove(deploy));
+        assertFalse(router.remove(deploy));
+        assertFalse(router.match(new String[] { "deploy" }).isMatched());
+        assertSame(status, router.match(new String[] { "status" }).getRoute());
+    }
+
+    @Test
+    public void getRoutesReturnsMutableCopy() {
+        CommandRoute deploy = new CommandRoute().segment("deploy");
+        CommandRouter router = new CommandRouter().add(deploy);
+
+        List<CommandRoute> routes = router.getRoutes();
+        routes.clear();
+        assertEquals(1, router.getRoutes().size());
+        assertSame(deploy, router.getRoutes().get(0));
+    }
+
+}
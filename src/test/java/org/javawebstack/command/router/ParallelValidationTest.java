@@ -0,0 +1,133 @@
+package org.javawebstack.command.router;
+
+import org.javawebstack.command.CommandContext;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class ParallelValidationTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void resolvesValuesInDeclarationOrder() throws CommandValidationException {
+        CommandRoute route = new CommandRoute().segment("sum").arg("first", true, Integer::parseInt)
+                .varArg("rest", false, Integer::parseInt).option("scale", false, o -> o.param("factor", Integer::parseInt));
+        String[] args = new String[102];
+        args[0] = "sum";
+        for(int i=1; i<=100; i++)
+            args[i] = String.valueOf(i);
+        args[101] = "--scale=3";
+
+        CommandContext context = route.validate(route.match(args), executor, 5, TimeUnit.SECONDS);
+        assertEquals(1, context.argInt("first"));
+        int[] rest = context.varArgInts("rest");
+        assertEquals(99, rest.length);
+        for(int i=0; i<rest.length; i++)
+            assertEquals(i + 2, rest[i]);
+        assertEquals(3, (int) context.option("scale", "factor"));
+    }
+
+    @Test
+    public void reportsThrowingResolverLikeSequentialValidation() {
+        Function<String, Object> failing = s -> {
+            throw new IllegalStateException("broken " + s);
+        };
+        assertSameError(new CommandRoute().segment("c").arg("n", true, failing), "c", "1");
+        assertSameError(new CommandRoute().segment("c").varArg("n", true, s -> {
+            if(s.equals("3"))
+                throw new IllegalStateException("broken");
+            return s;
+        }), "c", "1", "2", "3", "4");
+        assertSameError(new CommandRoute().segment("c").arg("n", true, Integer::parseInt)
+                .option("o", false, o -> o.param("v", failing)), "c", "1", "--o", "z");
+        assertSameError(new CommandRoute().segment("c").arg("n", true, (AsyncResolver) s -> {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("async " + s));
+            return future;
+        }), "c", "1");
+    }
+
+    @Test
+    public void reportsFirstErrorInDeclarationOrder() {
+        // The argument fails after the vararg, the error still has to be the one of the argument
+        CommandRoute route = new CommandRoute().segment("c").arg("n", true, s -> {
+            sleep(100);
+            throw new IllegalStateException("slow");
+        }).varArg("rest", false, s -> {
+            throw new IllegalStateException("fast");
+        });
+        assertSameError(route, "c", "1", "2");
+    }
+
+    @Test
+    public void failsWhenDeadlineIsExceeded() {
+        CommandRoute route = new CommandRoute().segment("c").arg("n", true, (AsyncResolver) s -> new CompletableFuture<>());
+        long start = System.nanoTime();
+        try {
+            route.validate(route.match(new String[] { "c", "1" }), executor, 100, TimeUnit.MILLISECONDS);
+            fail("Expected the validation to time out");
+        } catch (CommandValidationException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("timed out"));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void routerUsesParallelValidation() throws CommandValidationException {
+        CommandRoute route = new CommandRoute().segment("c").arg("n", true, s -> {
+            throw new IllegalStateException("broken");
+        });
+        CommandRouter router = new CommandRouter().add(route).parallelValidation(executor, 1, TimeUnit.SECONDS);
+        try {
+            router.match(new String[] { "c", "1" });
+            fail("Expected the validation to fail");
+        } catch (CommandValidationException ex) {
+            assertSame(route, ex.getRoute());
+        }
+    }
+
+    private void assertSameError(CommandRoute route, String... args) {
+        String sequential = error(() -> route.validate(route.match(args)));
+        String parallel = error(() -> route.validate(route.match(args), executor, 5, TimeUnit.SECONDS));
+        assertNotNull("Expected '" + String.join(" ", args) + "' to be rejected", sequential);
+        assertEquals(Arrays.toString(args), sequential, parallel);
+    }
+
+    private static String error(Validation validation) {
+        try {
+            validation.run();
+            return null;
+        } catch (CommandValidationException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Validation {
+
+        CommandContext run() throws CommandValidationException;
+
+    }
+
+}